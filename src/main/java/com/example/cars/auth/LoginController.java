@@ -1,5 +1,6 @@
 package com.example.cars.auth;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -8,15 +9,20 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
-@RequestMapping("/auth/login")
+@RequestMapping("/auth")
 @RequiredArgsConstructor
 public class LoginController {
 
     private final LoginService loginService;
 
-    @PostMapping
-    LoginResponse login(@RequestBody @Valid LoginRequest loginRequest) {
-        return loginService.login(loginRequest);
+    @PostMapping("/login")
+    LoginResponse login(@RequestBody @Valid LoginRequest loginRequest, HttpServletRequest request) {
+        return loginService.login(loginRequest, request.getRemoteAddr());
+    }
+
+    @PostMapping("/refresh")
+    LoginResponse refresh(@RequestBody @Valid RefreshRequest refreshRequest) {
+        return loginService.refresh(refreshRequest.getRefreshToken());
     }
 
 }
@@ -0,0 +1,104 @@
+package com.example.cars.auth;
+
+import com.example.cars.error.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throttles login attempts per username and per client address before any password is hashed. Each bucket is a single
+ * {@link AtomicLong} updated with compare-and-set, so concurrent attempts never block one another.
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final Limit perUsername;
+    private final Limit perClient;
+
+    public LoginRateLimiter(@Value("${cars.login-rate-limit.per-username.capacity:5}") int usernameCapacity,
+                            @Value("${cars.login-rate-limit.per-username.refill-period:12s}") Duration usernameRefillPeriod,
+                            @Value("${cars.login-rate-limit.per-client.capacity:20}") int clientCapacity,
+                            @Value("${cars.login-rate-limit.per-client.refill-period:3s}") Duration clientRefillPeriod,
+                            @Value("${cars.login-rate-limit.maximum-size:100000}") long maximumSize) {
+        this.perUsername = new Limit(usernameCapacity, usernameRefillPeriod, maximumSize);
+        this.perClient = new Limit(clientCapacity, clientRefillPeriod, maximumSize);
+    }
+
+    /**
+     * Takes one attempt from both the client's and the username's bucket, or from neither: a rejection by the username
+     * bucket gives the client its attempt back. The client address is
+     * {@code ServletRequest.getRemoteAddr()}, which {@code server.forward-headers-strategy: native} resolves from
+     * {@code X-Forwarded-For} only for requests relayed by a trusted proxy
+     * ({@code server.tomcat.remoteip.internal-proxies}).
+     *
+     * @throws TooManyRequestsException if either bucket is empty
+     */
+    public void acquire(String username, String clientAddress) {
+        long waitNanos = perClient.tryAcquire(clientAddress);
+        if (waitNanos == 0) {
+            waitNanos = perUsername.tryAcquire(username);
+            if (waitNanos > 0) {
+                perClient.refund(clientAddress);
+            }
+        }
+        if (waitNanos > 0) {
+            throw new TooManyRequestsException("Too many login attempts, try again later",
+                    Math.ceilDiv(waitNanos, TimeUnit.SECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * A token bucket kept as the theoretical arrival time of the next attempt (GCRA): an attempt is allowed while that
+     * time is no more than {@code capacity - 1} refill periods ahead of now, and pushes it one period further.
+     */
+    private static final class Limit {
+        private final long intervalNanos;
+        private final long toleranceNanos;
+        private final Cache<String, AtomicLong> buckets;
+
+        Limit(int capacity, Duration refillPeriod, long maximumSize) {
+            this.intervalNanos = refillPeriod.toNanos();
+            this.toleranceNanos = intervalNanos * (capacity - 1);
+            // An idle bucket is full again after capacity periods, so forgetting it then changes nothing
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterAccess(Duration.ofNanos(intervalNanos * capacity))
+                    .build();
+        }
+
+        /**
+         * @return 0 if the attempt is allowed, otherwise how long to wait before the next one is
+         */
+        long tryAcquire(String key) {
+            AtomicLong bucket = buckets.get(key, k -> new AtomicLong(System.nanoTime()));
+            while (true) {
+                long now = System.nanoTime();
+                long arrival = bucket.get();
+                long start = arrival - now < 0 ? now : arrival;
+                long ahead = start - now;
+                if (ahead > toleranceNanos) {
+                    return ahead - toleranceNanos;
+                }
+                if (bucket.compareAndSet(arrival, start + intervalNanos)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Returns an attempt taken by {@link #tryAcquire}. Subtracting commutes with concurrent attempts, so no retry loop
+         * is needed; a bucket evicted meanwhile is full anyway.
+         */
+        void refund(String key) {
+            AtomicLong bucket = buckets.getIfPresent(key);
+            if (bucket != null) {
+                bucket.addAndGet(-intervalNanos);
+            }
+        }
+    }
+}
@@ -8,4 +8,6 @@ import lombok.Data;
 public class LoginResponse {
 
     private String accessToken;
+
+    private String refreshToken;
 }
@@ -1,8 +1,7 @@
 package com.example.cars.auth;
 
 import com.example.cars.error.InvalidLoginException;
-import com.example.cars.user.persistence.AppUser;
-import com.example.cars.user.persistence.Role;
+import com.example.cars.user.model.UserCredentials;
 import com.example.cars.user.service.UserService;
 import com.nimbusds.jose.JWSAlgorithm;
 import com.nimbusds.jose.JWSHeader;
@@ -10,35 +9,77 @@ import com.nimbusds.jose.crypto.MACSigner;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
-import java.util.stream.Collectors;
+import java.util.HexFormat;
 
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class LoginService {
+    private static final SecureRandom RANDOM = new SecureRandom();
+
     @Value("${jwt.secret-key}")
     private String secretKey;
 
+    @Value("${jwt.refresh-token.ttl:30d}")
+    private Duration refreshTokenTtl;
+
     private final UserService userService;
     private final PasswordEncoder passwordEncoder;
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final LoginRateLimiter loginRateLimiter;
 
-    public LoginResponse login(LoginRequest loginRequest) {
-        AppUser user = userService.getUser(loginRequest.getUsername());
-        if (passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
+    public LoginResponse login(LoginRequest loginRequest, String clientAddress) {
+        loginRateLimiter.acquire(loginRequest.getUsername(), clientAddress);
+        UserCredentials user = userService.getCredentials(loginRequest.getUsername());
+        if (passwordEncoder.matches(loginRequest.getPassword(), user.getPasswordHash())) {
             return generateLoginResponse(user);
         }
         throw new InvalidLoginException("Invalid login");
     }
 
-    private LoginResponse generateLoginResponse(AppUser user) {
+    /**
+     * Exchanges a refresh token for a new token pair without checking the password again. The presented token is
+     * consumed, so each refresh token works only once; roles are re-read, so role changes apply from the next refresh.
+     */
+    @Transactional
+    public LoginResponse refresh(String refreshToken) {
+        String id = digest(refreshToken);
+        RefreshToken stored = refreshTokenRepository.findById(id)
+                .filter(token -> token.getExpiresAt().isAfter(Instant.now()))
+                .orElseThrow(() -> new InvalidLoginException("Invalid refresh token"));
+
+        if (refreshTokenRepository.consume(id) == 0) {
+            throw new InvalidLoginException("Invalid refresh token");
+        }
+        return generateLoginResponse(userService.getCredentials(stored.getUserId()));
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.refresh-token.cleanup-interval-ms:3600000}")
+    public void deleteExpiredRefreshTokens() {
+        int deleted = refreshTokenRepository.deleteExpiredBefore(Instant.now());
+        log.debug("Deleted {} expired refresh tokens", deleted);
+    }
+
+    private LoginResponse generateLoginResponse(UserCredentials user) {
         try {
             JWTClaimsSet claims = new JWTClaimsSet.Builder()
                     .subject(user.getUsername())
-                    .claim("roles", user.getRoles().stream().map(Role::getName).collect(Collectors.toSet()))
+                    .claim("roles", user.getRoleNames())
                     .issuer("cars.ge")
                     .expirationTime(new Date(System.currentTimeMillis() + 3600 * 1000))
                     .build();
@@ -47,9 +88,26 @@ public class LoginService {
             SignedJWT signedJWT = new SignedJWT(header, claims);
             signedJWT.sign(new MACSigner(secretKey.getBytes()));
 
-            return new LoginResponse(signedJWT.serialize());
+            return new LoginResponse(signedJWT.serialize(), issueRefreshToken(user.getId()));
         } catch (Exception e) {
             throw new InvalidLoginException("Failed to generate token");
         }
     }
+
+    private String issueRefreshToken(Long userId) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(new RefreshToken(digest(refreshToken), userId, Instant.now().plus(refreshTokenTtl)));
+        return refreshToken;
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.cars.auth;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * An issued refresh token. Only the SHA-256 digest of the token is stored, never the token itself.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "refresh_token", schema = "cars")
+public class RefreshToken {
+    @Id
+    private String id;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "expires_at")
+    private Instant expiresAt;
+
+    public RefreshToken(String id, Long userId, Instant expiresAt) {
+        this.id = id;
+        this.userId = userId;
+        this.expiresAt = expiresAt;
+    }
+}
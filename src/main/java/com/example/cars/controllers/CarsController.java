@@ -1,24 +1,44 @@
 package com.example.cars.controllers;
 
+import com.example.cars.images.model.ImageUploadStatusDTO;
+import com.example.cars.model.BulkReport;
+import com.example.cars.model.CacheStatsDTO;
 import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.CursorPage;
+import com.example.cars.model.PaginationMode;
+import com.example.cars.model.requests.CarFilter;
 import com.example.cars.model.requests.CarRequest;
+import com.example.cars.services.CarExportService;
+import com.example.cars.services.CarImportService;
 import com.example.cars.services.CarsService;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
 import jakarta.validation.constraints.PositiveOrZero;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 import static com.example.cars.security.AuthorizationConstants.ADMIN;
 import static com.example.cars.security.AuthorizationConstants.USER_OR_ADMIN;
+import static com.example.cars.utils.BulkRecordReader.TEXT_CSV_VALUE;
 
 @RestController
 @RequestMapping("/cars")
@@ -26,17 +46,68 @@ import static com.example.cars.security.AuthorizationConstants.USER_OR_ADMIN;
 @Validated
 public class CarsController {
     private final CarsService carsService;
+    private final CarExportService carExportService;
+    private final CarImportService carImportService;
 
     @GetMapping
     @PreAuthorize(USER_OR_ADMIN)
-    Page<CarDTO> getCars(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize) {
-        return carsService.getCars(page, pageSize);
+    ResponseEntity<Slice<CarDTO>> getCars(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize,
+                                          @Valid CarFilter filter,
+                                          @RequestParam(defaultValue = "ID") CarSortField sortBy,
+                                          @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+                                          @RequestParam(defaultValue = "PAGE") PaginationMode mode,
+                                          WebRequest request) {
+        // Only a conditional request pays for the version query, and a matching one never loads the page
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null && request.checkNotModified(
+                ETags.forCarVersions(carsService.getCarVersions(page, pageSize, filter, sortBy, direction, mode)))) {
+            return null;
+        }
+        Slice<CarDTO> cars = carsService.getCars(page, pageSize, filter, sortBy, direction, mode);
+        return ResponseEntity.ok().eTag(ETags.forCars(cars)).body(cars);
+    }
+
+    @GetMapping("/scroll")
+    @PreAuthorize(USER_OR_ADMIN)
+    CursorPage<CarDTO> scrollCars(@Valid CarFilter filter,
+                                  @RequestParam(required = false) String cursor,
+                                  @RequestParam(defaultValue = "ID") CarSortField sortBy,
+                                  @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+                                  @RequestParam(defaultValue = "10") @Positive @Max(100) int pageSize) {
+        return carsService.scrollCars(filter, sortBy, direction, cursor, pageSize);
+    }
+
+    @GetMapping("/search")
+    @PreAuthorize(USER_OR_ADMIN)
+    List<CarDTO> searchCars(@RequestParam(name = "q") @NotBlank String query,
+                            @RequestParam(defaultValue = "10") @Positive @Max(50) int limit) {
+        return carsService.searchCars(query, limit);
+    }
+
+    @GetMapping("/top")
+    @PreAuthorize(USER_OR_ADMIN)
+    List<CarDTO> getTopSellers(@RequestParam(defaultValue = "10") @Positive @Max(100) int limit) {
+        return carsService.getTopSellers(limit);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @PreAuthorize(USER_OR_ADMIN)
+    void exportCars(HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        carExportService.exportCars(response.getOutputStream());
+    }
+
+    @GetMapping("/cacheStats")
+    @PreAuthorize(ADMIN)
+    CacheStatsDTO getCacheStats() {
+        return carsService.getCacheStats();
     }
 
     @GetMapping("{id}")
     @PreAuthorize(USER_OR_ADMIN)
-    CarDTO getCarById(@PathVariable Long id) {
-        return carsService.findCar(id);
+    ResponseEntity<CarDTO> getCarById(@PathVariable Long id) {
+        CarDTO car = carsService.findCar(id);
+        // A matching If-None-Match is answered with 304 before the body is serialized
+        return ResponseEntity.ok().eTag(ETags.forCar(car)).body(car);
     }
 
     @PostMapping("/add")
@@ -49,8 +120,15 @@ public class CarsController {
     @PostMapping("/add/withImage")
     @PreAuthorize(ADMIN)
     ResponseEntity<?> addCarWithImage(@RequestPart(value = "image") MultipartFile image,
-                                      @RequestParam("request") String carRequestJson) {
-        return carsService.addCarWithImage(carRequestJson, image);
+                                      @RequestParam("request") String carRequestJson,
+                                      @RequestParam(defaultValue = "false") boolean async) {
+        return carsService.addCarWithImage(carRequestJson, image, async);
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    @PreAuthorize(ADMIN)
+    BulkReport importCars(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) throws IOException {
+        return carImportService.importCars(body, contentType);
     }
 
     @PutMapping("{id}")
@@ -68,8 +146,24 @@ public class CarsController {
 
     @PatchMapping("/{id}/updateImage")
     @PreAuthorize(ADMIN)
-    CarDTO updateCarImage(@PathVariable Long id, @RequestParam(name = "image") MultipartFile image) {
-        return carsService.updateCarImage(id, image);
+    ResponseEntity<CarDTO> updateCarImage(@PathVariable Long id, @RequestParam(name = "image") MultipartFile image,
+                                          @RequestParam(defaultValue = "false") boolean async) {
+        if (async) {
+            return carsService.updateCarImageAsync(id, image);
+        }
+        return ResponseEntity.ok(carsService.updateCarImage(id, image));
+    }
+
+    @GetMapping("/{id}/imageUpload")
+    @PreAuthorize(ADMIN)
+    ImageUploadStatusDTO getImageUploadStatus(@PathVariable Long id) {
+        return carsService.getImageUploadStatus(id);
+    }
+
+    @PostMapping("/{id}/imageUpload/retry")
+    @PreAuthorize(ADMIN)
+    ResponseEntity<ImageUploadStatusDTO> retryImageUpload(@PathVariable Long id) {
+        return ResponseEntity.accepted().body(carsService.retryImageUpload(id));
     }
 
     @DeleteMapping("{id}")
@@ -0,0 +1,100 @@
+package com.example.cars.controllers;
+
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarVersion;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.model.EngineVersion;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+
+import java.util.Objects;
+
+/**
+ * Strong entity tags derived from row versions, so conditional requests can be answered without serializing the body.
+ * A list tag hashes the same columns whether computed from the loaded page or from its {@link CarVersion}s and
+ * {@link EngineVersion}s, so a conditional list request can be validated without loading the page at all.
+ */
+final class ETags {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ETags() {
+    }
+
+    static String forCar(CarDTO car) {
+        return quote(mixCar(FNV_OFFSET_BASIS, car.getId(), car.getVersion(), car.getSalesCount(),
+                car.getEngine().getId(), car.getEngine().getVersion()));
+    }
+
+    static String forCars(Slice<CarDTO> cars) {
+        long hash = mixSlice(cars);
+        for (CarDTO car : cars) {
+            hash = mixCar(hash, car.getId(), car.getVersion(), car.getSalesCount(),
+                    car.getEngine().getId(), car.getEngine().getVersion());
+        }
+        return quote(hash);
+    }
+
+    static String forCarVersions(Slice<CarVersion> cars) {
+        long hash = mixSlice(cars);
+        for (CarVersion car : cars) {
+            hash = mixCar(hash, car.getId(), car.getVersion(), car.getSalesCount(), car.getEngineId(), car.getEngineVersion());
+        }
+        return quote(hash);
+    }
+
+    static String forEngines(Slice<EngineDTO> engines) {
+        long hash = mixSlice(engines);
+        for (EngineDTO engine : engines) {
+            hash = mixEngine(hash, engine.getId(), engine.getVersion());
+        }
+        return quote(hash);
+    }
+
+    static String forEngineVersions(Slice<EngineVersion> engines) {
+        long hash = mixSlice(engines);
+        for (EngineVersion engine : engines) {
+            hash = mixEngine(hash, engine.getId(), engine.getVersion());
+        }
+        return quote(hash);
+    }
+
+    private static long mixSlice(Slice<?> slice) {
+        long hash = mix(FNV_OFFSET_BASIS, slice.getNumber());
+        hash = mix(hash, slice.getSize());
+        hash = mix(hash, slice.hasNext() ? 1 : 0);
+        if (slice instanceof Page<?> page) {
+            hash = mix(hash, page.getTotalElements());
+        }
+        return hash;
+    }
+
+    private static long mixCar(long hash, Long id, Long version, Long salesCount, Long engineId, Long engineVersion) {
+        hash = mix(hash, id);
+        hash = mix(hash, version);
+        hash = mix(hash, salesCount);
+        return mixEngine(hash, engineId, engineVersion);
+    }
+
+    private static long mixEngine(long hash, Long id, Long version) {
+        hash = mix(hash, id);
+        return mix(hash, version);
+    }
+
+    private static long mix(long hash, Long value) {
+        return mix(hash, Objects.requireNonNullElse(value, -1L).longValue());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int shift = 0; shift < Long.SIZE; shift += Byte.SIZE) {
+            hash ^= (value >>> shift) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static String quote(long hash) {
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+}
@@ -1,15 +1,18 @@
 package com.example.cars.controllers;
 
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.PaginationMode;
 import com.example.cars.model.requests.EngineRequest;
 import com.example.cars.services.EngineService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import static com.example.cars.security.AuthorizationConstants.ADMIN;
 import static com.example.cars.security.AuthorizationConstants.USER_OR_ADMIN;
@@ -22,8 +25,15 @@ public class EngineController {
 
     @GetMapping
     @PreAuthorize(USER_OR_ADMIN)
-    Page<EngineDTO> getEngines(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize, @RequestParam(required = false, defaultValue = "0.0") double capacity) {
-        return engineService.getEngines(page, pageSize, capacity);
+    ResponseEntity<Slice<EngineDTO>> getEngines(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize, @RequestParam(required = false, defaultValue = "0.0") double capacity,
+                                                @RequestParam(defaultValue = "PAGE") PaginationMode mode,
+                                                WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null && request.checkNotModified(
+                ETags.forEngineVersions(engineService.getEngineVersions(page, pageSize, capacity, mode)))) {
+            return null;
+        }
+        Slice<EngineDTO> engines = engineService.getEngines(page, pageSize, capacity, mode);
+        return ResponseEntity.ok().eTag(ETags.forEngines(engines)).body(engines);
     }
 
     @PostMapping
@@ -0,0 +1,55 @@
+package com.example.cars.idempotency;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * Keys are only ever inserted: being {@link Persistable} makes {@code save} persist a new key instead of merging it
+ * over a row another instance committed first, so a concurrent duplicate fails on the primary key.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "idempotency_key", schema = "cars")
+public class IdempotencyKey implements Persistable<String> {
+    @Id
+    private String id;
+
+    @Column(name = "fingerprint")
+    private String fingerprint;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    @Transient
+    private boolean persisted;
+
+    public IdempotencyKey(String id, String fingerprint, Instant createdAt) {
+        this.id = id;
+        this.fingerprint = fingerprint;
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+}
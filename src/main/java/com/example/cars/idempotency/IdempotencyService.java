@@ -0,0 +1,181 @@
+package com.example.cars.idempotency;
+
+import com.example.cars.error.IdempotencyKeyReusedException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a mutation at most once per {@code Idempotency-Key}. Keys are scoped to the calling user and remembered
+ * together with a fingerprint of the request in a bounded, expiring in-memory store, optionally backed by the
+ * {@code idempotency_key} table so replays are recognised across restarts and instances. A replay with the same
+ * fingerprint gets the original outcome (or waits for it while the first attempt is still running) without
+ * running the mutation again. Only successful outcomes are kept: a failed attempt frees its key for a retry.
+ * A persistent key is inserted, never merged, so a duplicate racing on another instance fails on the primary key,
+ * is rolled back and gets the committed outcome instead.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Cache<String, Execution> executions;
+    private final Duration ttl;
+    private final boolean persistent;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${cars.idempotency.maximum-size:100000}") long maximumSize,
+                              @Value("${cars.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${cars.idempotency.persistent:false}") boolean persistent) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.executions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.ttl = ttl;
+        this.persistent = persistent;
+    }
+
+    public CompletableFuture<Void> execute(String key, String fingerprint, Supplier<CompletableFuture<Void>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must not be longer than " + MAX_KEY_LENGTH + " characters");
+        }
+
+        String scopedKey = currentUsername() + ":" + key;
+        Execution execution = new Execution(fingerprint, new CompletableFuture<>());
+        Execution previous = executions.asMap().putIfAbsent(scopedKey, execution);
+        if (previous == null && persistent) {
+            previous = findPersisted(scopedKey, execution).orElse(null);
+        }
+        if (previous != null) {
+            return replay(key, scopedKey, fingerprint, previous);
+        }
+
+        CompletableFuture<Void> result;
+        try {
+            // When persistent, a synchronous mutation and its key commit together
+            result = persistent
+                    ? transactionTemplate.execute(status -> persistOnSuccess(scopedKey, fingerprint, action.get()))
+                    : action.get();
+        } catch (DataIntegrityViolationException e) {
+            // Another instance committed the same key first; our mutation was rolled back together with the key
+            Optional<Execution> stored = persistent ? findPersisted(scopedKey, execution) : Optional.empty();
+            if (stored.isEmpty()) {
+                executions.asMap().remove(scopedKey, execution);
+                execution.result().completeExceptionally(e);
+                throw e;
+            }
+            return replay(key, scopedKey, fingerprint, stored.get());
+        } catch (RuntimeException e) {
+            executions.asMap().remove(scopedKey, execution);
+            execution.result().completeExceptionally(e);
+            throw e;
+        }
+
+        result.whenComplete((ignored, failure) -> {
+            if (failure == null) {
+                execution.result().complete(null);
+            } else {
+                executions.asMap().remove(scopedKey, execution);
+                execution.result().completeExceptionally(failure);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Synchronous variant of {@link #execute}; a replay of a still running attempt blocks until it finishes.
+     */
+    public void run(String key, String fingerprint, Runnable action) {
+        CompletableFuture<Void> result = execute(key, fingerprint, () -> {
+            action.run();
+            return CompletableFuture.completedFuture(null);
+        });
+        try {
+            result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cars.idempotency.cleanup-interval-ms:3600000}")
+    public void deleteExpiredKeys() {
+        if (persistent) {
+            int deleted = idempotencyKeyRepository.deleteCreatedBefore(Instant.now().minus(ttl));
+            log.debug("Deleted {} expired idempotency keys", deleted);
+        }
+    }
+
+    private CompletableFuture<Void> replay(String key, String scopedKey, String fingerprint, Execution previous) {
+        if (!previous.fingerprint().equals(fingerprint)) {
+            throw new IdempotencyKeyReusedException(HEADER + " '" + key + "' was already used for a different request");
+        }
+        log.debug("Replaying outcome of idempotency key {}", scopedKey);
+        return previous.result();
+    }
+
+    private Optional<Execution> findPersisted(String scopedKey, Execution execution) {
+        Instant cutoff = Instant.now().minus(ttl);
+        return idempotencyKeyRepository.findById(scopedKey)
+                .filter(stored -> stored.getCreatedAt().isAfter(cutoff))
+                .map(stored -> {
+                    Execution completed = new Execution(stored.getFingerprint(), CompletableFuture.completedFuture(null));
+                    executions.put(scopedKey, completed);
+                    // Requests that already found our placeholder get the stored outcome too
+                    execution.result().complete(null);
+                    return completed;
+                });
+    }
+
+    private CompletableFuture<Void> persistOnSuccess(String scopedKey, String fingerprint, CompletableFuture<Void> result) {
+        if (result.isDone()) {
+            if (!result.isCompletedExceptionally()) {
+                // Fails on the primary key if a concurrent duplicate committed first, rolling back this attempt
+                idempotencyKeyRepository.saveAndFlush(new IdempotencyKey(scopedKey, fingerprint, Instant.now()));
+            }
+            return result;
+        }
+        return result.thenRun(() -> {
+            try {
+                idempotencyKeyRepository.saveAndFlush(new IdempotencyKey(scopedKey, fingerprint, Instant.now()));
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Idempotency key {} was already persisted", scopedKey);
+            } catch (RuntimeException e) {
+                log.warn("Could not persist idempotency key {}", scopedKey, e);
+            }
+        });
+    }
+
+    private String currentUsername() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? "anonymous" : authentication.getName();
+    }
+
+    private record Execution(String fingerprint, CompletableFuture<Void> result) {
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.cars.images.model;
+
+public enum ImageUploadState {
+    PENDING,
+    UPLOADING,
+    COMPLETED,
+    FAILED
+}
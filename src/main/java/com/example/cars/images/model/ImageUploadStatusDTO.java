@@ -0,0 +1,14 @@
+package com.example.cars.images.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class ImageUploadStatusDTO {
+    private Long carId;
+    private ImageUploadState state;
+    private int attempts;
+    private String imageUrl;
+    private String error;
+}
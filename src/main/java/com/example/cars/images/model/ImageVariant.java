@@ -0,0 +1,47 @@
+package com.example.cars.images.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Resized copies stored next to every uploaded original: {@code images/<uuid>/original.png} gets
+ * {@code images/<uuid>/thumbnail}, {@code images/<uuid>/card} and {@code images/<uuid>/full}.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum ImageVariant {
+    THUMBNAIL("thumbnail", 160, 120),
+    CARD("card", 480, 360),
+    FULL("full", 1600, 1200);
+
+    private static final Pattern ORIGINAL = Pattern.compile("^(.*images/[0-9a-f-]{36}/)original(\\.[A-Za-z0-9]+)?$");
+
+    private final String key;
+    private final int maxWidth;
+    private final int maxHeight;
+
+    /**
+     * Maps each variant name to its location next to the given original, which may be an object key or a public URL.
+     * Images uploaded before variants existed have none, so the map is empty for them.
+     */
+    public static Map<String, String> locate(String original) {
+        if (original == null) {
+            return Collections.emptyMap();
+        }
+        Matcher matcher = ORIGINAL.matcher(original);
+        if (!matcher.matches()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> variants = new LinkedHashMap<>();
+        for (ImageVariant variant : values()) {
+            variants.put(variant.key, matcher.group(1) + variant.key);
+        }
+        return Collections.unmodifiableMap(variants);
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.cars.images.service;
+
+import com.example.cars.error.NotFoundException;
+import com.example.cars.error.ServiceBusyException;
+import com.example.cars.images.model.ImageUploadState;
+import com.example.cars.images.model.ImageUploadStatusDTO;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.services.CarCache;
+import com.example.cars.services.CarModelIndex;
+import com.example.cars.services.SalesLeaderboard;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads car images in the background. The upload is spooled to a temporary file so the request can return at once;
+ * a bounded pool then streams it to S3 and sets {@code Car.imageUrl}. Failed attempts are retried with a growing delay
+ * up to {@code max-attempts}, after which the upload stays {@link ImageUploadState#FAILED} until {@link #retry} or
+ * until its status expires.
+ */
+@Service
+@Slf4j
+public class ImageUploadService {
+
+    private final StorageService storageService;
+    private final CarRepository carRepository;
+    private final CarCache carCache;
+    private final CarModelIndex carModelIndex;
+    private final SalesLeaderboard salesLeaderboard;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final ThreadPoolExecutor uploader;
+    private final ScheduledExecutorService retryScheduler;
+    private final Cache<Long, ImageUpload> uploads;
+
+    public ImageUploadService(StorageService storageService, CarRepository carRepository, CarCache carCache,
+                              CarModelIndex carModelIndex, SalesLeaderboard salesLeaderboard,
+                              @Value("${cars.image-upload.threads:4}") int threads,
+                              @Value("${cars.image-upload.queue-capacity:100}") int queueCapacity,
+                              @Value("${cars.image-upload.max-attempts:3}") int maxAttempts,
+                              @Value("${cars.image-upload.retry-backoff:5s}") Duration retryBackoff,
+                              @Value("${cars.image-upload.status-ttl:1h}") Duration statusTtl) {
+        this.storageService = storageService;
+        this.carRepository = carRepository;
+        this.carCache = carCache;
+        this.carModelIndex = carModelIndex;
+        this.salesLeaderboard = salesLeaderboard;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.uploader = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), Thread.ofPlatform().name("image-upload-", 0).daemon().factory());
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("image-upload-retry").daemon().factory());
+        // Uploads still in flight clean up after themselves once they notice they were evicted or replaced
+        this.uploads = Caffeine.newBuilder()
+                .expireAfterWrite(statusTtl)
+                .<Long, ImageUpload>removalListener((carId, upload, cause) -> {
+                    if (upload != null && upload.isFinished()) {
+                        upload.discardFile();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Spools the image and queues it for upload as the car's new image; replaces any earlier upload for the car.
+     *
+     * @param key object key from {@link StorageService#prepareImageKey}
+     */
+    public ImageUploadStatusDTO submit(Long carId, String key, MultipartFile image) {
+        Path file;
+        try {
+            file = Files.createTempFile("car-image-", null);
+            image.transferTo(file);
+        } catch (IOException ioException) {
+            log.error("Error spooling image for car {}", carId, ioException);
+            throw new RuntimeException("Error spooling image upload", ioException);
+        }
+
+        ImageUpload upload = new ImageUpload(carId, key, file, image.getContentType(), image.getSize());
+        uploads.put(carId, upload);
+        enqueue(upload);
+        return upload.toStatus();
+    }
+
+    /**
+     * Rejects the request up front while the upload queue is full, so callers can check before they persist anything.
+     */
+    public void ensureCapacity() {
+        if (uploader.getQueue().remainingCapacity() == 0) {
+            throw new ServiceBusyException("Too many image uploads in progress, please retry");
+        }
+    }
+
+    public ImageUploadStatusDTO getStatus(Long carId) {
+        return findUpload(carId).toStatus();
+    }
+
+    /**
+     * Queues a failed upload again with a fresh set of attempts.
+     */
+    public ImageUploadStatusDTO retry(Long carId) {
+        ImageUpload upload = findUpload(carId);
+        if (!upload.restart()) {
+            throw new IllegalArgumentException("Only failed image uploads can be retried, upload for car with id "
+                    + carId + " is " + upload.toStatus().getState());
+        }
+        enqueue(upload);
+        return upload.toStatus();
+    }
+
+    @PreDestroy
+    public void stop() {
+        retryScheduler.shutdownNow();
+        uploader.shutdownNow();
+    }
+
+    private ImageUpload findUpload(Long carId) {
+        ImageUpload upload = uploads.getIfPresent(carId);
+        if (upload == null) {
+            throw new NotFoundException("No image upload for car with id " + carId);
+        }
+        return upload;
+    }
+
+    private void enqueue(ImageUpload upload) {
+        try {
+            uploader.execute(() -> attempt(upload));
+        } catch (RejectedExecutionException e) {
+            upload.fail("Too many image uploads in progress, please retry");
+        }
+    }
+
+    private void attempt(ImageUpload upload) {
+        if (isSuperseded(upload)) {
+            upload.discardFile();
+            return;
+        }
+
+        int attempt = upload.start();
+        try {
+            storageService.uploadWithVariants(new FileSystemResource(upload.file), upload.size, upload.contentType,
+                    upload.key);
+            String imageUrl = storageService.generatePublicUrl(upload.key);
+
+            if (isSuperseded(upload)) {
+                storageService.deleteImage(imageUrl);
+                upload.discardFile();
+            } else if (applyImageUrl(upload.carId, imageUrl)) {
+                upload.complete(imageUrl);
+                upload.discardFile();
+            } else {
+                storageService.deleteImage(imageUrl);
+                upload.fail("Car with id " + upload.carId + " no longer exists");
+                upload.discardFile();
+            }
+        } catch (RuntimeException e) {
+            log.warn("Image upload for car {} failed on attempt {}", upload.carId, attempt, e);
+            // A rejected image, e.g. one over the pixel limit, fails the same way on every attempt
+            if (attempt < maxAttempts && !(e instanceof IllegalArgumentException)) {
+                upload.retryLater(e.getMessage());
+                retryScheduler.schedule(() -> enqueue(upload), retryBackoff.toMillis() * attempt, TimeUnit.MILLISECONDS);
+            } else {
+                upload.fail(e.getMessage());
+            }
+        }
+    }
+
+    private boolean applyImageUrl(Long carId, String imageUrl) {
+        String oldImageUrl = carRepository.findImageUrl(carId).orElse(null);
+        if (carRepository.updateImageUrl(carId, imageUrl) == 0) {
+            return false;
+        }
+        carCache.invalidate(carId);
+        carRepository.findCarsByIds(List.of(carId)).forEach(car -> {
+            carModelIndex.index(car);
+            salesLeaderboard.update(car);
+        });
+
+        if (oldImageUrl != null && !oldImageUrl.isEmpty()) {
+            try {
+                storageService.deleteImage(oldImageUrl);
+            } catch (RuntimeException e) {
+                log.warn("Could not delete replaced image {}", oldImageUrl, e);
+            }
+        }
+        return true;
+    }
+
+    private boolean isSuperseded(ImageUpload upload) {
+        return uploads.getIfPresent(upload.carId) != upload;
+    }
+
+    private static final class ImageUpload {
+        private final Long carId;
+        private final String key;
+        private final Path file;
+        private final String contentType;
+        private final long size;
+
+        private ImageUploadState state = ImageUploadState.PENDING;
+        private int attempts;
+        private String imageUrl;
+        private String error;
+
+        ImageUpload(Long carId, String key, Path file, String contentType, long size) {
+            this.carId = carId;
+            this.key = key;
+            this.file = file;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        synchronized int start() {
+            state = ImageUploadState.UPLOADING;
+            return ++attempts;
+        }
+
+        synchronized void retryLater(String error) {
+            state = ImageUploadState.PENDING;
+            this.error = error;
+        }
+
+        synchronized void complete(String imageUrl) {
+            state = ImageUploadState.COMPLETED;
+            this.imageUrl = imageUrl;
+            this.error = null;
+        }
+
+        synchronized void fail(String error) {
+            state = ImageUploadState.FAILED;
+            this.error = error;
+        }
+
+        synchronized boolean restart() {
+            if (state != ImageUploadState.FAILED || !Files.exists(file)) {
+                return false;
+            }
+            state = ImageUploadState.PENDING;
+            attempts = 0;
+            return true;
+        }
+
+        synchronized boolean isFinished() {
+            return state == ImageUploadState.COMPLETED || state == ImageUploadState.FAILED;
+        }
+
+        synchronized ImageUploadStatusDTO toStatus() {
+            return new ImageUploadStatusDTO(carId, state, attempts, imageUrl, error);
+        }
+
+        void discardFile() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Could not delete spooled image {}", file, e);
+            }
+        }
+    }
+}
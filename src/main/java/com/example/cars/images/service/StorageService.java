@@ -1,20 +1,53 @@
 package com.example.cars.images.service;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.example.cars.images.model.ImageVariant;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @Slf4j
@@ -23,43 +56,214 @@ public class StorageService {
     @Value("${application.bucket.name}")
     private String bucketName;
 
+    @Value("${application.upload.multipart-threshold:16MB}")
+    private DataSize multipartThreshold;
+
+    @Value("${application.upload.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${application.upload.parallelism:4}")
+    private int parallelism;
+
     @Autowired
     private AmazonS3 s3Client;
 
+    @Value("${application.upload.variant-threads:4}")
+    private int variantThreads;
+
+    @Value("${application.upload.max-image-pixels:50000000}")
+    private long maxImagePixels;
+
+    private ExecutorService partUploader;
+
+    private ExecutorService variantGenerator;
+
     private final List<String> VALID_IMAGE_TYPES = Arrays.asList(
             "image/jpeg", "image/png", "image/gif", "image/bmp", "image/webp"
     );
 
-    public String uploadImage(MultipartFile file) {
-        validateFileExtension(file);
-        String filename = generateFileName(file);
+    @PostConstruct
+    public void start() {
+        partUploader = Executors.newFixedThreadPool(parallelism,
+                Thread.ofPlatform().name("s3-part-upload-", 0).daemon().factory());
+        // A full queue makes the uploading thread resize its own variants instead of piling up decoded images
+        variantGenerator = new ThreadPoolExecutor(variantThreads, variantThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(variantThreads * ImageVariant.values().length),
+                Thread.ofPlatform().name("image-variant-", 0).daemon().factory(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
 
-        try {
-            File convertedFile = convertMultiPartToFile(file);
+    @PreDestroy
+    public void stop() {
+        partUploader.shutdown();
+        variantGenerator.shutdown();
+    }
 
-            PutObjectRequest putObjectRequest = new PutObjectRequest(bucketName, filename, convertedFile);
+    public String uploadImage(MultipartFile file) {
+        String filename = prepareImageKey(file);
 
-            s3Client.putObject(putObjectRequest);
-            convertedFile.delete();
+        uploadWithVariants(file, file.getSize(), file.getContentType(), filename);
 
-            log.info(generatePublicUrl(filename));
-            return generatePublicUrl(filename);
+        log.info(generatePublicUrl(filename));
+        return generatePublicUrl(filename);
+    }
 
-        } catch (IOException ioException) {
-            log.error("Error converting multipart file", ioException);
+    /**
+     * Streams the content to S3 under the given key. Small uploads go in one request; from {@code multipart-threshold}
+     * on, parts of {@code part-size} are uploaded in parallel, each read from its own stream of the source, so the
+     * content is never buffered as a whole.
+     */
+    public void upload(InputStreamSource source, long size, String contentType, String key) {
+        try {
+            if (size >= multipartThreshold.toBytes()) {
+                uploadMultipart(source, size, contentType, key);
+            } else {
+                ObjectMetadata metadata = new ObjectMetadata();
+                metadata.setContentLength(size);
+                metadata.setContentType(contentType);
+                try (InputStream inputStream = source.getInputStream()) {
+                    s3Client.putObject(new PutObjectRequest(bucketName, key, inputStream, metadata));
+                }
+            }
+        } catch (IOException | UncheckedIOException ioException) {
+            log.error("Error reading uploaded file", ioException);
             throw new RuntimeException("Error uploading file to S3", ioException);
         }
     }
 
+    /**
+     * Uploads the original under {@code key} and stores its {@link ImageVariant}s next to it. The image is decoded
+     * once, subsampled down to the largest variant; the variants are resized, encoded and uploaded in parallel on a
+     * bounded pool while the original streams to S3. Images over {@code max-image-pixels} are rejected before any
+     * pixel is decoded, and formats that cannot be decoded get copies of the original as variants. If anything fails,
+     * whatever was stored is removed again.
+     */
+    public void uploadWithVariants(InputStreamSource source, long size, String contentType, String key) {
+        BufferedImage image = decode(source);
+        Map<String, String> variantKeys = ImageVariant.locate(key);
+
+        List<CompletableFuture<Void>> variants = image == null
+                ? List.of()
+                : Arrays.stream(ImageVariant.values())
+                        .map(variant -> CompletableFuture.runAsync(
+                                () -> uploadVariant(image, variant, variantKeys.get(variant.getKey())), variantGenerator))
+                        .toList();
+        CompletableFuture<Void> allVariants = CompletableFuture.allOf(variants.toArray(CompletableFuture[]::new));
+
+        try {
+            upload(source, size, contentType, key);
+            allVariants.join();
+            if (image == null) {
+                variantKeys.values().forEach(variantKey -> s3Client.copyObject(bucketName, key, bucketName, variantKey));
+            }
+        } catch (RuntimeException e) {
+            // Let running variants finish so none is stored after the cleanup
+            allVariants.exceptionally(ignored -> null).join();
+            deleteObjects(key);
+            throw e instanceof CompletionException && e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Validates the image and returns a fresh object key for it, without uploading anything.
+     */
+    public String prepareImageKey(MultipartFile file) {
+        validateFileExtension(file);
+        return generateFileName(file);
+    }
+
     public void deleteImage(String imageUrl) {
         String fileName = extractObjectKeyFromUrl(imageUrl);
 
         if (fileName != null) {
-            s3Client.deleteObject(bucketName, fileName);
+            deleteObjects(fileName);
             log.info("Deleted image: {}", fileName);
         }
     }
 
+    private void deleteObjects(String key) {
+        Collection<String> variantKeys = ImageVariant.locate(key).values();
+        if (variantKeys.isEmpty()) {
+            s3Client.deleteObject(bucketName, key);
+            return;
+        }
+        List<DeleteObjectsRequest.KeyVersion> keys = new ArrayList<>();
+        keys.add(new DeleteObjectsRequest.KeyVersion(key));
+        variantKeys.forEach(variantKey -> keys.add(new DeleteObjectsRequest.KeyVersion(variantKey)));
+        s3Client.deleteObjects(new DeleteObjectsRequest(bucketName).withKeys(keys));
+    }
+
+    /**
+     * Reads the dimensions from the header first and decodes only every n-th pixel in each direction, so memory is
+     * bounded by the largest variant rather than by the original.
+     *
+     * @return the decoded image, or null if the format (e.g. WebP, CMYK JPEG) is not supported by ImageIO
+     */
+    private BufferedImage decode(InputStreamSource source) {
+        try (InputStream inputStream = source.getInputStream();
+             ImageInputStream imageStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = imageStream == null
+                    ? Collections.emptyIterator()
+                    : ImageIO.getImageReaders(imageStream);
+            if (!readers.hasNext()) {
+                log.warn("No reader for image format, storing copies of the original as variants");
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageStream, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if ((long) width * height > maxImagePixels) {
+                    throw new IllegalArgumentException("Image of " + width + "x" + height
+                            + " pixels exceeds the limit of " + maxImagePixels + " pixels");
+                }
+                int subsampling = Math.max(1, (int) Math.floor(1 / scale(ImageVariant.FULL, width, height)));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            log.warn("Could not decode image, storing copies of the original as variants", e);
+            return null;
+        }
+    }
+
+    private static double scale(ImageVariant variant, int width, int height) {
+        return Math.min(1.0, Math.min((double) variant.getMaxWidth() / width, (double) variant.getMaxHeight() / height));
+    }
+
+    private void uploadVariant(BufferedImage image, ImageVariant variant, String key) {
+        double scale = scale(variant, image.getWidth(), image.getHeight());
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+
+        // JPEG has no alpha channel, so transparent areas are painted white
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = resized.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(resized, "jpg", encoded);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(encoded.size());
+        metadata.setContentType("image/jpeg");
+        s3Client.putObject(new PutObjectRequest(bucketName, key, new ByteArrayInputStream(encoded.toByteArray()), metadata));
+    }
+
     private String extractObjectKeyFromUrl(String imageUrl) {
         if (imageUrl != null && imageUrl.contains("/")) {
             return imageUrl.substring(imageUrl.lastIndexOf("/images") + 1);
@@ -77,30 +281,64 @@ public class StorageService {
         }
     }
 
-    private String generatePublicUrl(String fileName) {
+    public String generatePublicUrl(String fileName) {
         return String.format("https://%s.s3.%s.amazonaws.com/%s", bucketName, s3Client.getRegion(), fileName);
     }
 
     private String generateFileName(MultipartFile file) {
         String originalFilename = file.getOriginalFilename();
-        String extension = "";
-        String imageName = "";
-
-        if (!originalFilename.contains(".")) {
-            throw new IllegalArgumentException("File should have extension: " + extension);
-        } else {
-            imageName = originalFilename.substring(0, originalFilename.lastIndexOf("."));
-            extension = originalFilename.substring(originalFilename.lastIndexOf("."));
+
+        if (originalFilename == null || !originalFilename.contains(".")) {
+            throw new IllegalArgumentException("File should have extension: " + originalFilename);
+        }
+
+        // Variants are stored next to the original under the same random prefix, see ImageVariant
+        return "images/" + UUID.randomUUID() + "/original" + originalFilename.substring(originalFilename.lastIndexOf("."));
+    }
+
+    private void uploadMultipart(InputStreamSource source, long size, String contentType, String key) {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentType(contentType);
+        String uploadId = s3Client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucketName, key, metadata)).getUploadId();
+
+        long partBytes = partSize.toBytes();
+        int partCount = (int) ((size + partBytes - 1) / partBytes);
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>(partCount);
+        for (int i = 0; i < partCount; i++) {
+            int partNumber = i + 1;
+            long offset = i * partBytes;
+            long length = Math.min(partBytes, size - offset);
+            parts.add(CompletableFuture.supplyAsync(
+                    () -> uploadPart(source, key, uploadId, partNumber, offset, length, partNumber == partCount),
+                    partUploader));
         }
 
-        return "images/" + UUID.randomUUID() + "_" + imageName + extension;
+        try {
+            List<PartETag> partETags = parts.stream().map(CompletableFuture::join).toList();
+            s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+        } catch (RuntimeException e) {
+            // Parts still in flight fail once the upload is aborted
+            s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+            throw e instanceof CompletionException && e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
     }
 
-    private File convertMultiPartToFile(MultipartFile file) throws IOException {
-        File convertedFile = new File(Objects.requireNonNull(file.getOriginalFilename()));
-        FileOutputStream fos = new FileOutputStream(convertedFile);
-        fos.write(file.getBytes());
-        fos.close();
-        return convertedFile;
+    private PartETag uploadPart(InputStreamSource source, String key, String uploadId, int partNumber,
+                                long offset, long length, boolean lastPart) {
+        try (InputStream inputStream = source.getInputStream()) {
+            inputStream.skipNBytes(offset);
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucketName)
+                    .withKey(key)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withInputStream(inputStream)
+                    .withPartSize(length)
+                    .withLastPart(lastPart);
+            return s3Client.uploadPart(request).getPartETag();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 }
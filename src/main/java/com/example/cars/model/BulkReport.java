@@ -0,0 +1,37 @@
+package com.example.cars.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a bulk upload. Only the first {@value #MAX_REPORTED_ERRORS} failing rows are listed,
+ * {@code failed} counts all of them.
+ */
+@Data
+public class BulkReport {
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private long received;
+    private long applied;
+    private long failed;
+    private List<BulkRowError> errors = new ArrayList<>();
+
+    public void recordSuccess() {
+        received++;
+        applied++;
+    }
+
+    public void recordFailure(long line, String message) {
+        received++;
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new BulkRowError(line, message));
+        }
+    }
+
+    public boolean isErrorsTruncated() {
+        return failed > errors.size();
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.cars.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BulkRowError {
+    private long line;
+    private String message;
+}
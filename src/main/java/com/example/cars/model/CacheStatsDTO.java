@@ -0,0 +1,13 @@
+package com.example.cars.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class CacheStatsDTO {
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long size;
+}
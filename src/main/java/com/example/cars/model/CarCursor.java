@@ -0,0 +1,48 @@
+package com.example.cars.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset position for scrolling the car catalog: the sort key and id of the last row a client has seen.
+ */
+@Getter
+@AllArgsConstructor
+public class CarCursor {
+    private static final String SEPARATOR = ":";
+
+    private final CarSortField sortField;
+    private final Sort.Direction direction;
+    private final long lastValue;
+    private final long lastId;
+
+    public static CarCursor after(CarDTO car, CarSortField sortField, Sort.Direction direction) {
+        return new CarCursor(sortField, direction, sortField.valueOf(car), car.getId());
+    }
+
+    public String encode() {
+        String raw = sortField.name() + SEPARATOR + direction.name() + SEPARATOR + lastValue + SEPARATOR + lastId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static CarCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split(SEPARATOR);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new CarCursor(
+                    CarSortField.valueOf(parts[0]),
+                    Sort.Direction.valueOf(parts[1]),
+                    Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3]));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
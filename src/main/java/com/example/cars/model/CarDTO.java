@@ -1,7 +1,11 @@
 package com.example.cars.model;
 
+import com.example.cars.images.model.ImageVariant;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.*;
 
+import java.util.Map;
+
 @Data
 @AllArgsConstructor
 public class CarDTO {
@@ -14,5 +18,15 @@ public class CarDTO {
     private Long priceInCents;
     private EngineDTO engine;
     private String imageUrl;
+    @With
     private Long salesCount;
+    private Long version;
+
+    /**
+     * URLs of the resized copies of {@link #imageUrl} by variant name; empty if the image has none.
+     */
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    public Map<String, String> getImageVariants() {
+        return ImageVariant.locate(imageUrl);
+    }
 }
@@ -0,0 +1,29 @@
+package com.example.cars.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Function;
+
+@Getter
+@RequiredArgsConstructor
+public enum CarSortField {
+    ID("id", CarDTO::getId),
+    YEAR("year", car -> (long) car.getYear()),
+    PRICE_IN_CENTS("priceInCents", CarDTO::getPriceInCents),
+    SALES_COUNT("salesCount", CarDTO::getSalesCount);
+
+    private final String property;
+    private final Function<CarDTO, Long> valueExtractor;
+
+    public long valueOf(CarDTO car) {
+        return valueExtractor.apply(car);
+    }
+
+    /**
+     * Converts a cursor value back to the Java type of the sorted attribute, so it can be bound as a query parameter.
+     */
+    public Object toParameter(long value) {
+        return this == YEAR ? (Object) Math.toIntExact(value) : (Object) value;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.cars.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.With;
+
+/**
+ * The columns of a car that its entity tag is derived from, so a list can be validated without loading it.
+ */
+@Getter
+@AllArgsConstructor
+public class CarVersion {
+    private final Long id;
+    private final Long version;
+    @With
+    private final Long salesCount;
+    private final Long engineId;
+    private final Long engineVersion;
+}
@@ -10,4 +10,5 @@ public class EngineDTO {
 
     private int horsePower;
     private double capacity;
-}
\ No newline at end of file
+    private Long version;
+}
@@ -0,0 +1,14 @@
+package com.example.cars.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The columns of an engine that its entity tag is derived from, see {@link CarVersion}.
+ */
+@Getter
+@AllArgsConstructor
+public class EngineVersion {
+    private final Long id;
+    private final Long version;
+}
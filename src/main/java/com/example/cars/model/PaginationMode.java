@@ -0,0 +1,10 @@
+package com.example.cars.model;
+
+/**
+ * How a list endpoint paginates. {@link #PAGE} also counts the matching rows for totals,
+ * {@link #SLICE} fetches one extra row to report {@code hasNext} and skips the count query.
+ */
+public enum PaginationMode {
+    PAGE,
+    SLICE
+}
@@ -0,0 +1,48 @@
+package com.example.cars.model.requests;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.PositiveOrZero;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.stream.Stream;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class CarFilter {
+    @Min(1940)
+    private Integer minYear;
+
+    @Min(1940)
+    private Integer maxYear;
+
+    @PositiveOrZero
+    private Long minPriceInCents;
+
+    @PositiveOrZero
+    private Long maxPriceInCents;
+
+    private Boolean driveable;
+
+    @PositiveOrZero
+    private Integer minHorsePower;
+
+    @PositiveOrZero
+    private Integer maxHorsePower;
+
+    @PositiveOrZero
+    private Double minCapacity;
+
+    @PositiveOrZero
+    private Double maxCapacity;
+
+    public boolean isEmpty() {
+        return Stream.of(minYear, maxYear, minPriceInCents, maxPriceInCents, driveable,
+                        minHorsePower, maxHorsePower, minCapacity, maxCapacity)
+                .allMatch(value -> value == null);
+    }
+}
@@ -20,9 +20,11 @@ public class CarRequest {
 
     private boolean isDriveable;
 
+    @NotNull
     @PositiveOrZero
     private Long priceInCents;
 
+    @NotNull
     @Positive
     private Long engineId;
 }
@@ -8,10 +8,10 @@ import lombok.Setter;
 @Setter
 @Entity
 @Table(name = "car")
-@SequenceGenerator(name = "engine_seq_gen", sequenceName = "engine_seq", allocationSize = 1)
+@SequenceGenerator(name = "car_seq_gen", sequenceName = "car_seq", allocationSize = 50)
 public class Car {
     @Id
-    @GeneratedValue(generator = "engine_seq_gen", strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(generator = "car_seq_gen", strategy = GenerationType.SEQUENCE)
     private Long id;
 
     @Column(name = "model")
@@ -35,4 +35,8 @@ public class Car {
     @ManyToOne
     @JoinColumn(name = "engine_id")
     private Engine engine;
+
+    @Version
+    @Column(name = "version")
+    private Long version;
 }
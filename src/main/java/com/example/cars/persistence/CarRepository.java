@@ -1,20 +1,52 @@
 package com.example.cars.persistence;
 
 import com.example.cars.model.CarDTO;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
-public interface CarRepository extends JpaRepository<Car, Long> {
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
-    @Query(
-            "SELECT NEW com.example.cars.model.CarDTO" +
-                    "(c.id, c.model, c.year, c.isDriveable, c.priceInCents, " +
-                    "NEW com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity), " +
-                    "c.imageUrl, c.salesCount) " +
-                    "FROM Car c JOIN c.engine e"
-    )
+public interface CarRepository extends JpaRepository<Car, Long>, CarRepositoryCustom {
+
+    @Query(CarRepositoryCustomImpl.CAR_PROJECTION)
     Page<CarDTO> findCars(Pageable pageable);
+
+    @Query("SELECT c.priceInCents FROM Car c WHERE c.id = :carId")
+    Optional<Long> findPriceInCents(Long carId);
+
+    @Query(CarRepositoryCustomImpl.CAR_PROJECTION)
+    Slice<CarDTO> findCarSlice(Pageable pageable);
+
+    @Query("SELECT c.imageUrl FROM Car c WHERE c.id = :carId")
+    Optional<String> findImageUrl(Long carId);
+
+    /**
+     * Sets the image without loading the car; bumps the version so ETags change. Returns 0 if the car is gone.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Car c SET c.imageUrl = :imageUrl, c.version = c.version + 1 WHERE c.id = :carId")
+    int updateImageUrl(Long carId, String imageUrl);
+
+    @Query(CarRepositoryCustomImpl.CAR_PROJECTION + " WHERE c.id IN :carIds")
+    List<CarDTO> findCarsByIds(Collection<Long> carIds);
+
+    /**
+     * Forward-only cursor over the whole catalog; must be consumed inside a transaction and closed by the caller.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(CarRepositoryCustomImpl.CAR_PROJECTION + " ORDER BY c.id")
+    Stream<CarDTO> streamCars();
 }
@@ -0,0 +1,35 @@
+package com.example.cars.persistence;
+
+import com.example.cars.model.CarCursor;
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.CarVersion;
+import com.example.cars.model.requests.CarFilter;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+
+public interface CarRepositoryCustom {
+
+    /**
+     * Seeks past {@code cursor} on (sort key, id) and returns at most {@code limit} cars matching {@code filter},
+     * without counting or skipping rows. A {@code null} cursor starts from the beginning of the ordering.
+     */
+    List<CarDTO> findCarsAfter(CarFilter filter, CarSortField sortField, Sort.Direction direction, CarCursor cursor, int limit);
+
+    Page<CarDTO> searchCars(CarFilter filter, Pageable pageable);
+
+    /**
+     * Same as {@link #searchCars(CarFilter, Pageable)} but fetches one row past the page instead of counting matches.
+     */
+    Slice<CarDTO> searchCarSlice(CarFilter filter, Pageable pageable);
+
+    /**
+     * Selects only the {@link CarVersion}s of the page {@link #searchCars} (if {@code count}) or {@link #searchCarSlice}
+     * would return, which is enough to tell whether that page changed.
+     */
+    Slice<CarVersion> findCarVersions(CarFilter filter, Pageable pageable, boolean count);
+}
@@ -0,0 +1,177 @@
+package com.example.cars.persistence;
+
+import com.example.cars.model.CarCursor;
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.CarVersion;
+import com.example.cars.model.requests.CarFilter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class CarRepositoryCustomImpl implements CarRepositoryCustom {
+
+    static final String CAR_PROJECTION =
+            "SELECT NEW com.example.cars.model.CarDTO" +
+                    "(c.id, c.model, c.year, c.isDriveable, c.priceInCents, " +
+                    "NEW com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity, e.version), " +
+                    "c.imageUrl, c.salesCount, c.version) " +
+                    "FROM Car c JOIN c.engine e";
+
+    private static final String CAR_VERSION_PROJECTION =
+            "SELECT NEW com.example.cars.model.CarVersion(c.id, c.version, c.salesCount, e.id, e.version) " +
+                    "FROM Car c JOIN c.engine e";
+
+    private static final String CAR_COUNT = "SELECT COUNT(c) FROM Car c JOIN c.engine e";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<CarDTO> findCarsAfter(CarFilter filter, CarSortField sortField, Sort.Direction direction, CarCursor cursor, int limit) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        addFilterConditions(filter, conditions, parameters);
+
+        String sortPath = "c." + sortField.getProperty();
+        String comparison = direction.isAscending() ? ">" : "<";
+        if (cursor != null) {
+            parameters.put("lastId", cursor.getLastId());
+            if (sortField == CarSortField.ID) {
+                conditions.add("c.id " + comparison + " :lastId");
+            } else {
+                // Leading range condition on the sort key lets the (sort key, id) index bound the scan
+                parameters.put("lastValue", sortField.toParameter(cursor.getLastValue()));
+                conditions.add(sortPath + " " + comparison + "= :lastValue");
+                conditions.add("(" + sortPath + " " + comparison + " :lastValue OR c.id " + comparison + " :lastId)");
+            }
+        }
+
+        Sort sort = sortField == CarSortField.ID
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortField.getProperty()).and(Sort.by(direction, "id"));
+
+        TypedQuery<CarDTO> query = entityManager.createQuery(
+                CAR_PROJECTION + where(conditions) + orderBy(sort), CarDTO.class);
+        parameters.forEach(query::setParameter);
+
+        return query.setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public Page<CarDTO> searchCars(CarFilter filter, Pageable pageable) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        addFilterConditions(filter, conditions, parameters);
+        String where = where(conditions);
+
+        TypedQuery<CarDTO> query = entityManager.createQuery(CAR_PROJECTION + where + orderBy(pageable.getSort()), CarDTO.class);
+        parameters.forEach(query::setParameter);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+
+        return PageableExecutionUtils.getPage(query.getResultList(), pageable, () -> count(where, parameters));
+    }
+
+    @Override
+    public Slice<CarDTO> searchCarSlice(CarFilter filter, Pageable pageable) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        addFilterConditions(filter, conditions, parameters);
+
+        TypedQuery<CarDTO> query = entityManager.createQuery(
+                CAR_PROJECTION + where(conditions) + orderBy(pageable.getSort()), CarDTO.class);
+        parameters.forEach(query::setParameter);
+        if (pageable.isUnpaged()) {
+            return new SliceImpl<>(query.getResultList(), pageable, false);
+        }
+
+        List<CarDTO> cars = query.setFirstResult((int) pageable.getOffset())
+                .setMaxResults(pageable.getPageSize() + 1)
+                .getResultList();
+        boolean hasNext = cars.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? cars.subList(0, pageable.getPageSize()) : cars, pageable, hasNext);
+    }
+
+    @Override
+    public Slice<CarVersion> findCarVersions(CarFilter filter, Pageable pageable, boolean count) {
+        List<String> conditions = new ArrayList<>();
+        Map<String, Object> parameters = new HashMap<>();
+        addFilterConditions(filter, conditions, parameters);
+        String where = where(conditions);
+
+        TypedQuery<CarVersion> query = entityManager.createQuery(
+                CAR_VERSION_PROJECTION + where + orderBy(pageable.getSort()), CarVersion.class);
+        parameters.forEach(query::setParameter);
+        if (pageable.isUnpaged()) {
+            List<CarVersion> versions = query.getResultList();
+            return count ? new PageImpl<>(versions, pageable, versions.size()) : new SliceImpl<>(versions, pageable, false);
+        }
+
+        query.setFirstResult((int) pageable.getOffset());
+        if (count) {
+            List<CarVersion> versions = query.setMaxResults(pageable.getPageSize()).getResultList();
+            return PageableExecutionUtils.getPage(versions, pageable, () -> count(where, parameters));
+        }
+        List<CarVersion> versions = query.setMaxResults(pageable.getPageSize() + 1).getResultList();
+        boolean hasNext = versions.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? versions.subList(0, pageable.getPageSize()) : versions, pageable, hasNext);
+    }
+
+    private long count(String where, Map<String, Object> parameters) {
+        TypedQuery<Long> countQuery = entityManager.createQuery(CAR_COUNT + where, Long.class);
+        parameters.forEach(countQuery::setParameter);
+        return countQuery.getSingleResult();
+    }
+
+    private void addFilterConditions(CarFilter filter, List<String> conditions, Map<String, Object> parameters) {
+        if (filter == null) {
+            return;
+        }
+        addCondition("c.year >=", "minYear", filter.getMinYear(), conditions, parameters);
+        addCondition("c.year <=", "maxYear", filter.getMaxYear(), conditions, parameters);
+        addCondition("c.priceInCents >=", "minPriceInCents", filter.getMinPriceInCents(), conditions, parameters);
+        addCondition("c.priceInCents <=", "maxPriceInCents", filter.getMaxPriceInCents(), conditions, parameters);
+        addCondition("c.isDriveable =", "driveable", filter.getDriveable(), conditions, parameters);
+        addCondition("e.horsePower >=", "minHorsePower", filter.getMinHorsePower(), conditions, parameters);
+        addCondition("e.horsePower <=", "maxHorsePower", filter.getMaxHorsePower(), conditions, parameters);
+        addCondition("e.capacity >=", "minCapacity", filter.getMinCapacity(), conditions, parameters);
+        addCondition("e.capacity <=", "maxCapacity", filter.getMaxCapacity(), conditions, parameters);
+    }
+
+    private void addCondition(String expression, String parameter, Object value,
+                              List<String> conditions, Map<String, Object> parameters) {
+        if (value != null) {
+            conditions.add(expression + " :" + parameter);
+            parameters.put(parameter, value);
+        }
+    }
+
+    private String where(List<String> conditions) {
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private String orderBy(Sort sort) {
+        if (sort.isUnsorted()) {
+            return "";
+        }
+        return " ORDER BY " + sort.stream()
+                .map(order -> "c." + order.getProperty() + (order.isAscending() ? " ASC" : " DESC"))
+                .collect(Collectors.joining(", "));
+    }
+}
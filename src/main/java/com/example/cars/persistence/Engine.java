@@ -21,4 +21,8 @@ public class Engine {
 
     @Column(name = "capacity")
     private double capacity;
+
+    @Version
+    @Column(name = "version")
+    private Long version;
 }
@@ -1,15 +1,31 @@
 package com.example.cars.persistence;
 
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.EngineVersion;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 public interface EngineRepository extends JpaRepository<Engine, Long> {
 
-    @Query("SELECT new com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity)" +
-            "FROM Engine e WHERE e.capacity = :capacity")
+    String ENGINE_PROJECTION = "SELECT new com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity, e.version)" +
+            "FROM Engine e WHERE e.capacity = :capacity";
+
+    String ENGINE_VERSION_PROJECTION = "SELECT new com.example.cars.model.EngineVersion(e.id, e.version) " +
+            "FROM Engine e WHERE e.capacity = :capacity";
+
+    @Query(ENGINE_PROJECTION)
     Page<EngineDTO> findEngines(double capacity, Pageable pageable);
+
+    @Query(ENGINE_PROJECTION)
+    Slice<EngineDTO> findEngineSlice(double capacity, Pageable pageable);
+
+    @Query(ENGINE_VERSION_PROJECTION)
+    Page<EngineVersion> findEngineVersions(double capacity, Pageable pageable);
+
+    @Query(ENGINE_VERSION_PROJECTION)
+    Slice<EngineVersion> findEngineVersionSlice(double capacity, Pageable pageable);
 }
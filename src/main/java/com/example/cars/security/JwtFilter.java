@@ -1,29 +1,78 @@
 package com.example.cars.security;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSVerifier;
 import com.nimbusds.jose.crypto.MACVerifier;
+import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.jwt.SignedJWT;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Authenticates requests carrying a bearer JWT. Verified tokens are cached by their SHA-256 digest until they
+ * expire, so repeat requests with the same token skip parsing and the HMAC check; the raw token is never kept.
+ */
 @Component
 public class JwtFilter extends OncePerRequestFilter {
-    @Value("${jwt.secret-key}")
-    private String secretKey;
+    private final JWSVerifier verifier;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    // Few distinct role combinations exist, so every cached token shares one of a handful of authority sets
+    private final Map<Set<String>, Set<GrantedAuthority>> authoritySets = new ConcurrentHashMap<>();
+
+    public JwtFilter(@Value("${jwt.secret-key}") String secretKey,
+                     @Value("${jwt.cache.maximum-size:10000}") long maximumSize) {
+        try {
+            this.verifier = new MACVerifier(secretKey.getBytes());
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Invalid JWT secret key", e);
+        }
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(String key, VerifiedToken token, long currentTime) {
+                        return Math.max(0, Duration.between(Instant.now(), token.expiresAt()).toNanos());
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, token, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, VerifiedToken token, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -37,28 +86,25 @@ public class JwtFilter extends OncePerRequestFilter {
 
         String token = authHeader.substring(7);
         try {
-            SignedJWT signedJWT = SignedJWT.parse(token);
-            JWSVerifier verifier = new MACVerifier(secretKey.getBytes());
-
-            if (!signedJWT.verify(verifier)) {
-                filterChain.doFilter(request, response);
-                return;
-            }
-
-            Date expirationTime = signedJWT.getJWTClaimsSet().getExpirationTime();
-            if (expirationTime == null || expirationTime.before(new Date())) {
+            String digest = digest(token);
+            VerifiedToken verifiedToken = verifiedTokens.getIfPresent(digest);
+            if (verifiedToken == null) {
+                verifiedToken = verify(token);
+                if (verifiedToken == null) {
+                    filterChain.doFilter(request, response);
+                    return;
+                }
+                verifiedTokens.put(digest, verifiedToken);
+            } else if (!verifiedToken.expiresAt().isAfter(Instant.now())) {
+                // The cache evicts lazily, so an entry may outlive its token by a moment
+                verifiedTokens.invalidate(digest);
                 logger.error("JWT token expired");
                 filterChain.doFilter(request, response);
                 return;
             }
 
-            String username = signedJWT.getJWTClaimsSet().getSubject();
-            List<String> roles = signedJWT.getJWTClaimsSet().getStringListClaim("roles");
-
             UsernamePasswordAuthenticationToken authenticationToken =
-                    new UsernamePasswordAuthenticationToken(username, null,
-                            roles.stream().map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                                    .collect(Collectors.toSet()));
+                    new UsernamePasswordAuthenticationToken(verifiedToken.username(), null, verifiedToken.authorities());
 
             SecurityContextHolder.getContext().setAuthentication(authenticationToken);
         } catch (Exception e) {
@@ -67,4 +113,35 @@ public class JwtFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    private VerifiedToken verify(String token) throws Exception {
+        SignedJWT signedJWT = SignedJWT.parse(token);
+        if (!signedJWT.verify(verifier)) {
+            return null;
+        }
+
+        JWTClaimsSet claims = signedJWT.getJWTClaimsSet();
+        Date expirationTime = claims.getExpirationTime();
+        if (expirationTime == null || expirationTime.before(new Date())) {
+            logger.error("JWT token expired");
+            return null;
+        }
+
+        List<String> roles = claims.getStringListClaim("roles");
+        return new VerifiedToken(claims.getSubject(), internAuthorities(roles), expirationTime.toInstant());
+    }
+
+    private Set<GrantedAuthority> internAuthorities(List<String> roles) {
+        return authoritySets.computeIfAbsent(Set.copyOf(roles), roleSet -> roleSet.stream()
+                .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .collect(Collectors.toUnmodifiableSet()));
+    }
+
+    private static String digest(String token) throws NoSuchAlgorithmException {
+        byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
+    }
+
+    private record VerifiedToken(String username, Set<GrantedAuthority> authorities, Instant expiresAt) {
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.cars.services;
+
+import com.example.cars.model.CacheStatsDTO;
+import com.example.cars.model.CarDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Size- and TTL-bounded read-through cache of single-car lookups, keyed by car id.
+ */
+@Component
+public class CarCache {
+
+    private final Cache<Long, CarDTO> cache;
+
+    public CarCache(@Value("${cars.cache.car.maximum-size:10000}") long maximumSize,
+                    @Value("${cars.cache.car.ttl:5m}") Duration ttl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    public CarDTO get(Long id, Function<Long, CarDTO> loader) {
+        return cache.get(id, loader);
+    }
+
+    public void invalidate(Long id) {
+        cache.invalidate(id);
+
+        // A reader may re-cache the old row before the writing transaction commits, so drop it again afterwards
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cache.invalidate(id);
+                }
+            });
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public CacheStatsDTO stats() {
+        CacheStats stats = cache.stats();
+        return new CacheStatsDTO(stats.hitCount(), stats.missCount(), stats.evictionCount(), cache.estimatedSize());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.cars.services;
+
+import com.example.cars.error.NotFoundException;
+import com.example.cars.model.CarDTO;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.utils.NdjsonWriter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CarExportService {
+    private static final int FLUSH_EVERY = 1000;
+
+    private final CarRepository carRepository;
+    private final AppUserRepository appUserRepository;
+    private final SalesCounter salesCounter;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Streams the whole catalog as NDJSON in id order. The transaction keeps the cursor open
+     * (PostgreSQL only honours the fetch size outside auto-commit) and rows are projected to DTOs,
+     * so nothing accumulates in the persistence context.
+     */
+    @Transactional(readOnly = true)
+    public long exportCars(OutputStream out) throws IOException {
+        try (Stream<CarDTO> cars = carRepository.streamCars()) {
+            long count = write(cars, out);
+            log.info("Exported {} cars", count);
+            return count;
+        }
+    }
+
+    /**
+     * Streams every car owned by the user as NDJSON in id order, for garages too large for the paged endpoints.
+     */
+    @Transactional(readOnly = true)
+    public long exportUserCars(Long userId, OutputStream out) throws IOException {
+        if (!appUserRepository.existsById(userId)) {
+            throw new NotFoundException("User with id '" + userId + "' not found");
+        }
+        try (Stream<CarDTO> cars = appUserRepository.streamUserCars(userId)) {
+            long count = write(cars, out);
+            log.info("Exported {} cars of user {}", count, userId);
+            return count;
+        }
+    }
+
+    private long write(Stream<CarDTO> cars, OutputStream out) throws IOException {
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out, FLUSH_EVERY)) {
+            Iterator<CarDTO> iterator = cars.iterator();
+            while (iterator.hasNext()) {
+                writer.write(salesCounter.merge(iterator.next()));
+            }
+            return writer.getCount();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.cars.services;
+
+import com.example.cars.model.BulkReport;
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.model.requests.CarRequest;
+import com.example.cars.persistence.Car;
+import com.example.cars.persistence.Engine;
+import com.example.cars.utils.BulkRecordReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CarImportService {
+    // Multiple of hibernate.jdbc.batch_size and of the car_seq allocation size
+    private static final int CHUNK_SIZE = 500;
+
+    private final EngineService engineService;
+    private final CarModelIndex carModelIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Validates each row as it is read and inserts the valid ones in JDBC batches, {@value #CHUNK_SIZE} cars per
+     * transaction, clearing the persistence context after each chunk so memory use does not grow with the upload.
+     * Rows count as imported, and become searchable, only once their chunk has committed.
+     */
+    public BulkReport importCars(InputStream in, MediaType contentType) throws IOException {
+        BulkReport report = new BulkReport();
+        Map<Long, Optional<Engine>> engines = new HashMap<>();
+        List<PendingCar> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        new BulkRecordReader<>(objectMapper, CarRequest.class).read(in, contentType, record -> {
+            if (!record.isValid()) {
+                report.recordFailure(record.line(), record.error());
+                return;
+            }
+
+            CarRequest request = record.value();
+            String violations = validate(request);
+            if (violations != null) {
+                report.recordFailure(record.line(), violations);
+                return;
+            }
+            Optional<Engine> engine = engines.computeIfAbsent(request.getEngineId(), engineService::findEngine);
+            if (engine.isEmpty()) {
+                report.recordFailure(record.line(), "Engine with id " + request.getEngineId() + " not found");
+                return;
+            }
+
+            chunk.add(new PendingCar(record.line(), buildCar(request, engine.get())));
+            if (chunk.size() == CHUNK_SIZE) {
+                apply(chunk, report);
+            }
+        });
+        apply(chunk, report);
+
+        log.info("Bulk import finished: {} cars imported, {} rows rejected", report.getApplied(), report.getFailed());
+        return report;
+    }
+
+    private String validate(CarRequest request) {
+        Set<ConstraintViolation<CarRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private Car buildCar(CarRequest request, Engine engine) {
+        Car car = new Car();
+        car.setModel(request.getModel());
+        car.setYear(request.getYear());
+        car.setDriveable(request.isDriveable());
+        car.setPriceInCents(request.getPriceInCents());
+        car.setEngine(engine);
+        return car;
+    }
+
+    private void apply(List<PendingCar> chunk, BulkReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                chunk.forEach(pending -> entityManager.persist(pending.car()));
+                entityManager.flush();
+                entityManager.clear();
+            });
+        } catch (RuntimeException e) {
+            log.warn("Importing a chunk of {} cars failed", chunk.size(), e);
+            chunk.forEach(pending -> report.recordFailure(pending.line(), "Not imported: " + e.getMessage()));
+            chunk.clear();
+            return;
+        }
+
+        for (PendingCar pending : chunk) {
+            report.recordSuccess();
+            carModelIndex.index(mapCar(pending.car()));
+        }
+        chunk.clear();
+    }
+
+    private CarDTO mapCar(Car car) {
+        Engine engine = car.getEngine();
+        return new CarDTO(car.getId(), car.getModel(), car.getYear(), car.isDriveable(), car.getPriceInCents(),
+                new EngineDTO(engine.getId(), engine.getHorsePower(), engine.getCapacity(), engine.getVersion()),
+                car.getImageUrl(), car.getSalesCount(), car.getVersion());
+    }
+
+    private record PendingCar(long line, Car car) {
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.cars.services;
+
+import com.example.cars.model.CarCursor;
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.persistence.CarRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory autocomplete index over car models. Queries shorter than a trigram are answered from a sorted map of
+ * model words, longer ones by intersecting trigram posting lists; neither touches the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CarModelIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    private static final Comparator<Match> RANKING = Comparator.comparingInt(Match::rank)
+            .thenComparing(match -> match.car().getSalesCount(), Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparingInt(match -> match.car().getModel().length())
+            .thenComparing(match -> match.car().getId());
+
+    private final CarRepository carRepository;
+
+    private final Map<Long, CarDTO> cars = new ConcurrentHashMap<>();
+    private final Map<String, Set<Long>> gramPostings = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<String, Set<Long>> wordPostings = new ConcurrentSkipListMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        CarCursor cursor = null;
+        List<CarDTO> batch;
+        long loaded = 0;
+        do {
+            batch = carRepository.findCarsAfter(null, CarSortField.ID, Sort.Direction.ASC, cursor, LOAD_BATCH_SIZE);
+            batch.forEach(this::index);
+            loaded += batch.size();
+            if (!batch.isEmpty()) {
+                cursor = CarCursor.after(batch.getLast(), CarSortField.ID, Sort.Direction.ASC);
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+
+        log.info("Car model index loaded with {} cars", loaded);
+    }
+
+    public synchronized void index(CarDTO car) {
+        CarDTO previous = cars.put(car.getId(), car);
+        if (previous != null) {
+            unlink(previous);
+        }
+        link(car);
+    }
+
+    /**
+     * Moves sales flushed by {@link SalesCounter} into the indexed car, which then matches its updated row again;
+     * otherwise the indexed count would fall behind as the pending delta it is merged with shrinks.
+     */
+    public synchronized void addFlushedSales(Long id, long delta) {
+        cars.computeIfPresent(id, (carId, car) ->
+                car.withSalesCount((car.getSalesCount() == null ? 0 : car.getSalesCount()) + delta));
+    }
+
+    /**
+     * Swaps the updated engine into every indexed car that uses it; engine updates leave the car rows untouched.
+     */
+    public synchronized void updateEngine(EngineDTO engine) {
+        cars.replaceAll((id, car) -> car.getEngine() == null || !engine.getId().equals(car.getEngine().getId())
+                ? car
+                : new CarDTO(car.getId(), car.getModel(), car.getYear(), car.isDriveable(), car.getPriceInCents(),
+                        engine, car.getImageUrl(), car.getSalesCount(), car.getVersion()));
+    }
+
+    public synchronized void remove(Long id) {
+        CarDTO previous = cars.remove(id);
+        if (previous != null) {
+            unlink(previous);
+        }
+    }
+
+    public List<CarDTO> search(String query, int limit) {
+        String normalizedQuery = normalize(query);
+        if (normalizedQuery.isEmpty()) {
+            return List.of();
+        }
+
+        Collection<Long> candidates = normalizedQuery.length() < GRAM_LENGTH
+                ? wordPrefixCandidates(normalizedQuery)
+                : gramCandidates(normalizedQuery);
+
+        // Bounded max-heap on the ranking: the worst match is evicted whenever it grows past the limit
+        PriorityQueue<Match> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        for (Long id : candidates) {
+            CarDTO car = cars.get(id);
+            if (car == null) {
+                continue;
+            }
+            int rank = rank(normalize(car.getModel()), normalizedQuery);
+            if (rank < 0) {
+                continue;
+            }
+            top.offer(new Match(car, rank));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+
+        List<Match> matches = new ArrayList<>(top);
+        matches.sort(RANKING);
+        return matches.stream().map(Match::car).toList();
+    }
+
+    private Collection<Long> wordPrefixCandidates(String prefix) {
+        Set<Long> candidates = new HashSet<>();
+        wordPostings.subMap(prefix, true, prefix + Character.MAX_VALUE, true)
+                .values()
+                .forEach(candidates::addAll);
+        return candidates;
+    }
+
+    private Collection<Long> gramCandidates(String query) {
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String gram : grams(query)) {
+            Set<Long> posting = gramPostings.get(gram);
+            if (posting == null) {
+                return List.of();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> smallest = postings.getFirst();
+        List<Set<Long>> others = postings.subList(1, postings.size());
+        return smallest.stream()
+                .filter(id -> others.stream().allMatch(posting -> posting.contains(id)))
+                .toList();
+    }
+
+    private void link(CarDTO car) {
+        String model = normalize(car.getModel());
+        for (String gram : grams(model)) {
+            gramPostings.computeIfAbsent(gram, key -> ConcurrentHashMap.newKeySet()).add(car.getId());
+        }
+        for (String word : words(model)) {
+            wordPostings.computeIfAbsent(word, key -> ConcurrentHashMap.newKeySet()).add(car.getId());
+        }
+    }
+
+    private void unlink(CarDTO car) {
+        String model = normalize(car.getModel());
+        for (String gram : grams(model)) {
+            removePosting(gramPostings, gram, car.getId());
+        }
+        for (String word : words(model)) {
+            removePosting(wordPostings, word, car.getId());
+        }
+    }
+
+    private void removePosting(Map<String, Set<Long>> postings, String key, Long id) {
+        Set<Long> posting = postings.get(key);
+        if (posting != null) {
+            posting.remove(id);
+            if (posting.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    private static int rank(String model, String query) {
+        if (model.startsWith(query)) {
+            return 0;
+        }
+        if (model.contains(" " + query)) {
+            return 1;
+        }
+        return model.contains(query) ? 2 : -1;
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+
+    private static Set<String> words(String text) {
+        return text.isEmpty() ? Set.of() : new HashSet<>(Arrays.asList(text.split(" ")));
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private record Match(CarDTO car, int rank) {
+    }
+}
@@ -2,9 +2,18 @@ package com.example.cars.services;
 
 import com.example.cars.error.ErrorDTO;
 import com.example.cars.error.NotFoundException;
+import com.example.cars.images.model.ImageUploadStatusDTO;
+import com.example.cars.images.service.ImageUploadService;
 import com.example.cars.images.service.StorageService;
+import com.example.cars.model.CacheStatsDTO;
+import com.example.cars.model.CarCursor;
 import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.CarVersion;
+import com.example.cars.model.CursorPage;
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.PaginationMode;
+import com.example.cars.model.requests.CarFilter;
 import com.example.cars.model.requests.CarRequest;
 import com.example.cars.persistence.Car;
 import com.example.cars.persistence.CarRepository;
@@ -14,13 +23,16 @@ import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -33,12 +45,55 @@ public class CarsService {
     private final CarRepository carRepository;
     private final EngineService engineService;
     private final StorageService storageService;
+    private final ImageUploadService imageUploadService;
+    private final CarCache carCache;
+    private final CarModelIndex carModelIndex;
+    private final SalesCounter salesCounter;
+    private final SalesLeaderboard salesLeaderboard;
 
-    public Page<CarDTO> getCars(int page, int pageSize) {
-        return carRepository.findCars(PageRequest.of(page, pageSize));
+    public Slice<CarDTO> getCars(int page, int pageSize, CarFilter filter, CarSortField sortField,
+                                 Sort.Direction direction, PaginationMode mode) {
+        Pageable pageable = carPage(page, pageSize, sortField, direction);
+
+        boolean slice = mode == PaginationMode.SLICE;
+        Slice<CarDTO> cars;
+        if (filter == null || filter.isEmpty()) {
+            cars = slice ? carRepository.findCarSlice(pageable) : carRepository.findCars(pageable);
+        } else {
+            cars = slice ? carRepository.searchCarSlice(filter, pageable) : carRepository.searchCars(filter, pageable);
+        }
+        return cars.map(salesCounter::merge);
+    }
+
+    /**
+     * Versions of the cars {@link #getCars} would return, with pending sales merged in the same way.
+     */
+    public Slice<CarVersion> getCarVersions(int page, int pageSize, CarFilter filter, CarSortField sortField,
+                                            Sort.Direction direction, PaginationMode mode) {
+        Pageable pageable = carPage(page, pageSize, sortField, direction);
+        return carRepository.findCarVersions(filter, pageable, mode == PaginationMode.PAGE).map(version -> {
+            long delta = salesCounter.pendingDelta(version.getId());
+            return delta == 0 ? version : version.withSalesCount(version.getSalesCount() + delta);
+        });
     }
 
-    public ResponseEntity<?> addCarWithImage(String carRequestJson, MultipartFile image) {
+    public CursorPage<CarDTO> scrollCars(CarFilter filter, CarSortField sortField, Sort.Direction direction,
+                                         String cursor, int pageSize) {
+        CarCursor after = cursor == null || cursor.isBlank() ? null : CarCursor.decode(cursor);
+        if (after != null && (after.getSortField() != sortField || after.getDirection() != direction)) {
+            throw new IllegalArgumentException("Cursor was issued for " + after.getSortField() + " " + after.getDirection()
+                    + " ordering, not " + sortField + " " + direction);
+        }
+
+        List<CarDTO> cars = carRepository.findCarsAfter(filter, sortField, direction, after, pageSize + 1);
+        boolean hasNext = cars.size() > pageSize;
+        List<CarDTO> content = hasNext ? cars.subList(0, pageSize) : cars;
+        String nextCursor = hasNext ? CarCursor.after(content.getLast(), sortField, direction).encode() : null;
+
+        return new CursorPage<>(content.stream().map(salesCounter::merge).toList(), nextCursor, hasNext);
+    }
+
+    public ResponseEntity<?> addCarWithImage(String carRequestJson, MultipartFile image, boolean async) {
         CarRequest request;
         try {
             ObjectMapper objectMapper = new ObjectMapper();
@@ -60,13 +115,23 @@ public class CarsService {
         car.setPriceInCents(request.getPriceInCents());
         car.setEngine(engineService.findEngineById(request.getEngineId()));
 
-        if (image != null && !image.isEmpty()) {
+        boolean hasImage = image != null && !image.isEmpty();
+        if (hasImage && async) {
+            // Validated before the car is saved, so a rejected image or a full upload queue does not leave a car behind
+            String imageKey = storageService.prepareImageKey(image);
+            imageUploadService.ensureCapacity();
+            carRepository.save(car);
+            imageUploadService.submit(car.getId(), imageKey, image);
+            return acceptedImageUpload(mapAndIndexCar(car));
+        }
+
+        if (hasImage) {
             String imageUrl = storageService.uploadImage(image);
             car.setImageUrl(imageUrl);
         }
 
         carRepository.save(car);
-        return ResponseEntity.status(HttpStatus.CREATED).body(mapCar(car));
+        return ResponseEntity.status(HttpStatus.CREATED).body(mapAndIndexCar(car));
     }
 
     public CarDTO addCar(CarRequest request) {
@@ -78,7 +143,7 @@ public class CarsService {
         car.setEngine(engineService.findEngineById(request.getEngineId()));
 
         carRepository.save(car);
-        return mapCar(car);
+        return mapAndIndexCar(car);
     }
 
     public CarDTO updateCar(Long id, CarRequest request) {
@@ -93,7 +158,8 @@ public class CarsService {
         }
 
         carRepository.save(car);
-        return mapCar(car);
+        carCache.invalidate(id);
+        return mapAndIndexCar(car);
     }
 
     public CarDTO updateCarImage(Long id, MultipartFile image) {
@@ -107,7 +173,27 @@ public class CarsService {
         }
 
         carRepository.save(car);
-        return mapCar(car);
+        carCache.invalidate(id);
+        return mapAndIndexCar(car);
+    }
+
+    /**
+     * Queues the image for a background upload; the car keeps its current image until the upload completes.
+     */
+    public ResponseEntity<CarDTO> updateCarImageAsync(Long id, MultipartFile image) {
+        CarDTO car = findCar(id);
+        String imageKey = storageService.prepareImageKey(image);
+        imageUploadService.ensureCapacity();
+        imageUploadService.submit(id, imageKey, image);
+        return acceptedImageUpload(car);
+    }
+
+    public ImageUploadStatusDTO getImageUploadStatus(Long id) {
+        return imageUploadService.getStatus(id);
+    }
+
+    public ImageUploadStatusDTO retryImageUpload(Long id) {
+        return imageUploadService.retry(id);
     }
 
     public CarDTO updateCarPriceInCents(Long id, Long newPriceInCents) {
@@ -118,17 +204,54 @@ public class CarsService {
         }
 
         carRepository.save(car);
-        return mapCar(car);
+        carCache.invalidate(id);
+        return mapAndIndexCar(car);
     }
 
     public void deleteCar(Long id) {
         carRepository.deleteById(id);
+        carCache.invalidate(id);
+        carModelIndex.remove(id);
+        salesCounter.discard(id);
+        salesLeaderboard.remove(id);
+    }
+
+    public List<CarDTO> getTopSellers(int limit) {
+        return salesLeaderboard.top(limit);
+    }
+
+    public List<CarDTO> searchCars(String query, int limit) {
+        return carModelIndex.search(query, limit).stream().map(salesCounter::merge).toList();
     }
 
     public CarDTO findCar(Long id) {
-        Car car = carRepository.findById(id).orElseThrow(() -> buildNotFoundException(id));
+        // The cache holds the persisted row, unflushed sales are added on every read
+        CarDTO car = carCache.get(id, carId -> mapCar(carRepository.findById(carId).orElseThrow(() -> buildNotFoundException(carId))));
+        return salesCounter.merge(car);
+    }
+
+    public CacheStatsDTO getCacheStats() {
+        return carCache.stats();
+    }
+
+    private ResponseEntity<CarDTO> acceptedImageUpload(CarDTO car) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/cars/" + car.getId() + "/imageUpload"))
+                .body(car);
+    }
+
+    private Pageable carPage(int page, int pageSize, CarSortField sortField, Sort.Direction direction) {
+        Sort sort = sortField == CarSortField.ID
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortField.getProperty()).and(Sort.by(direction, "id"));
+        return PageRequest.of(page, pageSize, sort);
+    }
 
-        return mapCar(car);
+    private CarDTO mapAndIndexCar(Car car) {
+        CarDTO carDTO = mapCar(car);
+        carModelIndex.index(carDTO);
+        salesLeaderboard.update(carDTO);
+        return salesCounter.merge(carDTO);
     }
 
     private CarDTO mapCar(Car car) {
@@ -137,10 +260,12 @@ public class CarsService {
                         new EngineDTO(
                                 car.getEngine().getId(),
                                 car.getEngine().getHorsePower(),
-                                car.getEngine().getCapacity()
+                                car.getEngine().getCapacity(),
+                                car.getEngine().getVersion()
                         ),
                         car.getImageUrl(),
-                        car.getSalesCount());
+                        car.getSalesCount(),
+                        car.getVersion());
     }
 
     private NotFoundException buildNotFoundException(Long id) {
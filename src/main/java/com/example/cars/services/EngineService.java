@@ -2,21 +2,47 @@ package com.example.cars.services;
 
 import com.example.cars.error.NotFoundException;
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.EngineVersion;
+import com.example.cars.model.PaginationMode;
 import com.example.cars.model.requests.EngineRequest;
 import com.example.cars.persistence.Engine;
 import com.example.cars.persistence.EngineRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.stereotype.Service;
 
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class EngineService {
     private final EngineRepository engineRepository;
+    private final CarCache carCache;
+    private final CarModelIndex carModelIndex;
+
+    private volatile EngineSnapshot snapshot = EngineSnapshot.EMPTY;
 
-    public Page<EngineDTO> getEngines(int page, int pageSize, double capacity) {
-        return engineRepository.findEngines(capacity, PageRequest.of(page, pageSize));
+    public Slice<EngineDTO> getEngines(int page, int pageSize, double capacity, PaginationMode mode) {
+        Pageable pageable = PageRequest.of(page, pageSize);
+        return mode == PaginationMode.SLICE
+                ? engineRepository.findEngineSlice(capacity, pageable)
+                : engineRepository.findEngines(capacity, pageable);
+    }
+
+    /**
+     * Versions of the engines {@link #getEngines} would return, for validating a cached page.
+     */
+    public Slice<EngineVersion> getEngineVersions(int page, int pageSize, double capacity, PaginationMode mode) {
+        Pageable pageable = PageRequest.of(page, pageSize);
+        return mode == PaginationMode.SLICE
+                ? engineRepository.findEngineVersionSlice(capacity, pageable)
+                : engineRepository.findEngineVersions(capacity, pageable);
     }
 
     public void createEngine(EngineRequest request) {
@@ -25,6 +51,7 @@ public class EngineService {
         engine.setHorsePower(request.getHorsePower());
 
         engineRepository.save(engine);
+        refreshSnapshot();
     }
 
     public EngineDTO updateEngine(Long id, EngineRequest request) {
@@ -34,23 +61,51 @@ public class EngineService {
         engine.setCapacity(request.getCapacity());
 
         engineRepository.save(engine);
+        refreshSnapshot();
+        // Cached cars embed their engine, and engine updates are rare enough to simply start over
+        carCache.invalidateAll();
 
-        return mapEngine(engine);
+        EngineDTO updated = mapEngine(engine);
+        carModelIndex.updateEngine(updated);
+        return updated;
     }
 
     public void deleteEngine(Long id) {
         engineRepository.deleteById(id);
+        refreshSnapshot();
     }
 
     public Engine findEngineById(Long id) {
-        return engineRepository.findById(id).orElseThrow(() ->  buildNotFoundException(id));
+        return findEngine(id).orElseThrow(() ->  buildNotFoundException(id));
+    }
+
+    public Optional<Engine> findEngine(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        Engine engine = snapshot.find(id);
+        if (engine != null) {
+            return Optional.of(engine);
+        }
+
+        // Engines written by another instance only reach this snapshot on its next rebuild
+        Optional<Engine> storedEngine = engineRepository.findById(id);
+        storedEngine.ifPresent(found -> refreshSnapshot());
+        return storedEngine;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void refreshSnapshot() {
+        snapshot = EngineSnapshot.of(engineRepository.findAll());
+        log.debug("Engine snapshot rebuilt with {} engines", snapshot.size());
     }
 
     private EngineDTO mapEngine(Engine engine) {
         return new EngineDTO(
                 engine.getId(),
                 engine.getHorsePower(),
-                engine.getCapacity()
+                engine.getCapacity(),
+                engine.getVersion()
         );
     }
 
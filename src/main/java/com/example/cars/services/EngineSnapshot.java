@@ -0,0 +1,65 @@
+package com.example.cars.services;
+
+import com.example.cars.persistence.Engine;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable copy of the engine reference table, stored as id-sorted primitive arrays and searched by binary search.
+ * Lookups hand out detached {@link Engine} copies, so callers can attach them to cars without touching the database.
+ */
+final class EngineSnapshot {
+
+    static final EngineSnapshot EMPTY = new EngineSnapshot(new long[0], new int[0], new double[0], new long[0]);
+
+    private final long[] ids;
+    private final int[] horsePowers;
+    private final double[] capacities;
+    private final long[] versions;
+
+    private EngineSnapshot(long[] ids, int[] horsePowers, double[] capacities, long[] versions) {
+        this.ids = ids;
+        this.horsePowers = horsePowers;
+        this.capacities = capacities;
+        this.versions = versions;
+    }
+
+    static EngineSnapshot of(List<Engine> engines) {
+        Engine[] sorted = engines.stream()
+                .sorted(Comparator.comparing(Engine::getId))
+                .toArray(Engine[]::new);
+
+        long[] ids = new long[sorted.length];
+        int[] horsePowers = new int[sorted.length];
+        double[] capacities = new double[sorted.length];
+        long[] versions = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = sorted[i].getId();
+            horsePowers[i] = sorted[i].getHorsePower();
+            capacities[i] = sorted[i].getCapacity();
+            versions[i] = sorted[i].getVersion() == null ? 0 : sorted[i].getVersion();
+        }
+        return new EngineSnapshot(ids, horsePowers, capacities, versions);
+    }
+
+    Engine find(long id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0) {
+            return null;
+        }
+
+        Engine engine = new Engine();
+        engine.setId(ids[index]);
+        engine.setHorsePower(horsePowers[index]);
+        engine.setCapacity(capacities[index]);
+        // Hibernate treats a versioned entity without a version as transient, so copies keep theirs
+        engine.setVersion(versions[index]);
+        return engine;
+    }
+
+    int size() {
+        return ids.length;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.cars.services;
+
+import com.example.cars.model.CarDTO;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Absorbs sales count increments in per-car striped adders and periodically writes the accumulated deltas to
+ * {@code cars.car.sales_count} in one batched transaction, so a bestseller's row is not updated on every purchase.
+ * Reads add the not yet flushed delta on top of the persisted value.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SalesCounter {
+    private static final String FLUSH_SQL =
+            "UPDATE cars.car SET sales_count = sales_count + ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CarCache carCache;
+    private final CarModelIndex carModelIndex;
+
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Counts a sale right away; if the surrounding transaction rolls back, the sale is taken back out.
+     */
+    public void increment(Long carId) {
+        LongAdder adder = pending.computeIfAbsent(carId, id -> new LongAdder());
+        adder.increment();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        adder.decrement();
+                    }
+                }
+            });
+        }
+    }
+
+    public long pendingDelta(Long carId) {
+        LongAdder adder = pending.get(carId);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    public CarDTO merge(CarDTO car) {
+        long delta = pendingDelta(car.getId());
+        return delta == 0 ? car : car.withSalesCount(car.getSalesCount() + delta);
+    }
+
+    /**
+     * Runs {@code reader} while no flush is in progress, so persisted counts it reads plus {@link #pendingDelta}
+     * never count a sale twice or miss it.
+     */
+    public synchronized <T> T consistentRead(Supplier<T> reader) {
+        return reader.get();
+    }
+
+    /**
+     * Drops the pending delta of a deleted car, which would otherwise never find a row to land in.
+     */
+    public void discard(Long carId) {
+        pending.remove(carId);
+    }
+
+    @Scheduled(fixedDelayString = "${cars.sales-counter.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        List<Long> carIds = new ArrayList<>();
+        List<LongAdder> adders = new ArrayList<>();
+        List<Object[]> batch = new ArrayList<>();
+        pending.forEach((carId, adder) -> {
+            long delta = adder.sum();
+            if (delta != 0) {
+                carIds.add(carId);
+                adders.add(adder);
+                batch.add(new Object[]{delta, carId});
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        int[] updated;
+        try {
+            updated = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, batch));
+        } catch (RuntimeException e) {
+            // Nothing was subtracted, so the deltas are simply retried on the next flush
+            log.warn("Flushing {} sales counters failed", batch.size(), e);
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            // A car not committed yet keeps its delta; increments that raced with the flush stay in the adder
+            if (updated[i] != 0) {
+                long delta = (long) batch.get(i)[0];
+                adders.get(i).add(-delta);
+                carCache.invalidate(carIds.get(i));
+                carModelIndex.addFlushedSales(carIds.get(i), delta);
+            }
+        }
+        log.debug("Flushed sales counters of {} cars", batch.size());
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush();
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.cars.services;
+
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.persistence.CarRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code capacity} best-selling cars, ranked in memory so {@code /cars/top} never touches the database.
+ * Seeded from the sales count index at startup. Members move on every sale; a sale of a car outside the board only
+ * marks it as a candidate, and candidates are promoted by a periodic lookup of their actual totals.
+ */
+@Component
+@Slf4j
+public class SalesLeaderboard {
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    // Same order as the SALES_COUNT DESC keyset query the board is seeded with
+    private static final Comparator<CarDTO> RANKING = Comparator.comparing(CarDTO::getSalesCount, Comparator.reverseOrder())
+            .thenComparing(CarDTO::getId, Comparator.reverseOrder());
+
+    private final CarRepository carRepository;
+    private final SalesCounter salesCounter;
+    private final int capacity;
+
+    private final TreeSet<CarDTO> ranking = new TreeSet<>(RANKING);
+    private final Map<Long, CarDTO> members = new HashMap<>();
+    private final Set<Long> candidates = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean reloadRequested = new AtomicBoolean();
+
+    public SalesLeaderboard(CarRepository carRepository, SalesCounter salesCounter,
+                            @Value("${cars.leaderboard.capacity:100}") int capacity) {
+        this.carRepository = carRepository;
+        this.salesCounter = salesCounter;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reseeds the board. The database is read without holding the board's lock, so purchases updating the board
+     * never wait for a query while they hold a connection.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        List<CarDTO> top = salesCounter.consistentRead(() ->
+                carRepository.findCarsAfter(null, CarSortField.SALES_COUNT, Sort.Direction.DESC, null, capacity).stream()
+                        .map(salesCounter::merge)
+                        .toList());
+
+        synchronized (this) {
+            ranking.clear();
+            members.clear();
+            top.forEach(this::add);
+        }
+        log.info("Sales leaderboard loaded with {} cars", top.size());
+    }
+
+    public synchronized List<CarDTO> top(int limit) {
+        return ranking.stream().limit(Math.min(limit, capacity)).toList();
+    }
+
+    /**
+     * Counts a sale on the board right away; if the surrounding transaction rolls back, the sale is taken back out.
+     */
+    public void recordSale(Long carId) {
+        adjust(carId, 1);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        adjust(carId, -1);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Refreshes the details of a ranked car after an update, keeping the count tracked by the board.
+     */
+    public synchronized void update(CarDTO car) {
+        CarDTO member = members.get(car.getId());
+        if (member != null) {
+            ranking.remove(member);
+            add(car.withSalesCount(member.getSalesCount()));
+        }
+    }
+
+    public synchronized void remove(Long carId) {
+        candidates.remove(carId);
+        CarDTO member = members.remove(carId);
+        if (member != null) {
+            ranking.remove(member);
+            // The next best car is not known without the database, so the vacancy is filled by the next refresh
+            reloadRequested.set(true);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${cars.leaderboard.refresh-interval-ms:5000}")
+    public void refresh() {
+        if (reloadRequested.getAndSet(false)) {
+            load();
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        List<Long> carIds = new ArrayList<>(candidates);
+        candidates.removeAll(carIds);
+        for (int from = 0; from < carIds.size(); from += LOOKUP_BATCH_SIZE) {
+            List<Long> batch = carIds.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, carIds.size()));
+            List<CarDTO> cars = salesCounter.consistentRead(() -> carRepository.findCarsByIds(batch).stream()
+                    .map(salesCounter::merge)
+                    .toList());
+            synchronized (this) {
+                cars.forEach(this::offer);
+            }
+        }
+    }
+
+    private synchronized void adjust(Long carId, long delta) {
+        CarDTO member = members.get(carId);
+        if (member == null) {
+            if (delta > 0) {
+                candidates.add(carId);
+            }
+            return;
+        }
+        ranking.remove(member);
+        add(member.withSalesCount(member.getSalesCount() + delta));
+    }
+
+    private void offer(CarDTO car) {
+        // A car sold again since the lookup is a candidate once more and is offered with its newer total next time
+        if (members.containsKey(car.getId()) || candidates.contains(car.getId())) {
+            return;
+        }
+        if (ranking.size() < capacity) {
+            add(car);
+            return;
+        }
+        CarDTO last = ranking.last();
+        if (RANKING.compare(car, last) < 0) {
+            ranking.pollLast();
+            members.remove(last.getId());
+            add(car);
+        }
+    }
+
+    private void add(CarDTO car) {
+        ranking.add(car);
+        members.put(car.getId(), car);
+    }
+}
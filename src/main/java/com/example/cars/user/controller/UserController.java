@@ -1,25 +1,50 @@
 package com.example.cars.user.controller;
 
+import com.example.cars.idempotency.IdempotencyService;
+import com.example.cars.model.BulkReport;
 import com.example.cars.model.CarDTO;
+import com.example.cars.model.PaginationMode;
+import com.example.cars.services.CarExportService;
 import com.example.cars.user.model.AppUserDTO;
 import com.example.cars.user.model.AppUserInfoDTO;
+import com.example.cars.user.model.BalanceEntryDTO;
 import com.example.cars.user.model.UserRequest;
+import com.example.cars.user.model.UserSortField;
+import com.example.cars.user.service.BalanceImportService;
+import com.example.cars.user.service.PurchaseBatcher;
 import com.example.cars.user.service.UserService;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
 import static com.example.cars.security.AuthorizationConstants.ADMIN;
 import static com.example.cars.security.AuthorizationConstants.USER;
+import static com.example.cars.utils.BulkRecordReader.TEXT_CSV_VALUE;
 
 @RestController
 @RequestMapping("/users")
 @RequiredArgsConstructor
+@Validated
 public class UserController {
 
     private final UserService userService;
+    private final PurchaseBatcher purchaseBatcher;
+    private final IdempotencyService idempotencyService;
+    private final CarExportService carExportService;
+    private final BalanceImportService balanceImportService;
 
     @PreAuthorize(ADMIN)
     @PostMapping
@@ -29,43 +54,79 @@ public class UserController {
 
     @PreAuthorize(ADMIN)
     @GetMapping("/info")
-    public Page<AppUserInfoDTO> getAllUsersInfo(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize){
-        return userService.getAllUsersInfo(page, pageSize);
+    public Slice<AppUserInfoDTO> getAllUsersInfo(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize,
+                                                 @RequestParam(defaultValue = "ID") UserSortField sortBy,
+                                                 @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+                                                 @RequestParam(defaultValue = "PAGE") PaginationMode mode){
+        return userService.getAllUsersInfo(page, pageSize, sortBy, direction, mode);
     }
 
     @PreAuthorize(ADMIN)
     @GetMapping("/info/{userId}")
-    public AppUserDTO getUserInfoById(@PathVariable Long userId){
-        return userService.getUserInfoById(userId);
+    public AppUserDTO getUserInfoById(@PathVariable Long userId, @RequestParam(defaultValue = "10") @Positive @Max(100) int carsPageSize){
+        return userService.getUserInfoById(userId, carsPageSize);
     }
 
     @PreAuthorize(ADMIN)
     @PatchMapping("/{userId}/addFundsToBalance")
-    public void updateBalance(@PathVariable Long userId, @RequestParam Long amountInCents) {
-        userService.updateBalance(userId, amountInCents);
+    public void updateBalance(@PathVariable Long userId, @RequestParam Long amountInCents,
+                              @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        idempotencyService.run(idempotencyKey, "addFundsToBalance:" + userId + ":" + amountInCents,
+                () -> userService.updateBalance(userId, amountInCents));
+    }
+
+    @PreAuthorize(ADMIN)
+    @PostMapping(value = "/balances/bulk", consumes = {MediaType.APPLICATION_NDJSON_VALUE, TEXT_CSV_VALUE})
+    public BulkReport adjustBalances(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType, InputStream body) throws IOException {
+        return balanceImportService.importAdjustments(body, contentType);
+    }
+
+    @PreAuthorize(ADMIN)
+    @GetMapping("/{userId}/balanceEntries")
+    public Slice<BalanceEntryDTO> getBalanceEntries(@PathVariable Long userId, @RequestParam(defaultValue = "0") int page,
+                                                    @RequestParam(defaultValue = "10") int pageSize) {
+        return userService.getBalanceEntries(userId, page, pageSize);
     }
 
     @PreAuthorize(ADMIN)
     @GetMapping("/{userId}/ownedCars")
-    Page<CarDTO> getUserCars(@PathVariable Long userId, @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize) {
-        return userService.getUserCars(page, pageSize, userId);
+    Slice<CarDTO> getUserCars(@PathVariable Long userId, @RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize,
+                              @RequestParam(defaultValue = "PAGE") PaginationMode mode) {
+        return userService.getUserCars(page, pageSize, userId, mode);
+    }
+
+    @PreAuthorize(ADMIN)
+    @GetMapping(value = "/{userId}/ownedCars/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    void exportUserCars(@PathVariable Long userId, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        carExportService.exportUserCars(userId, response.getOutputStream());
     }
 
     @PreAuthorize(USER)
     @GetMapping("/myCars")
-    Page<CarDTO> getCurrentUserCars(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize) {
-        return userService.getCurrentUserCars(page, pageSize);
+    Slice<CarDTO> getCurrentUserCars(@RequestParam(defaultValue = "0") int page, @RequestParam(defaultValue = "10") int pageSize,
+                                     @RequestParam(defaultValue = "PAGE") PaginationMode mode) {
+        return userService.getCurrentUserCars(page, pageSize, mode);
     }
 
     @PreAuthorize(USER)
     @PostMapping("/purchase")
-    public void purchaseCar(@RequestParam Long carId) {
-        userService.purchaseCar(carId);
+    public CompletableFuture<Void> purchaseCar(@RequestParam Long carId,
+                                               @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "purchase:" + carId, () -> {
+            if (purchaseBatcher.isEnabled()) {
+                // The request thread is released while the purchase waits for its batch to commit
+                return purchaseBatcher.submit(carId);
+            }
+            userService.purchaseCar(carId);
+            return CompletableFuture.completedFuture(null);
+        });
     }
 
     @PreAuthorize(USER)
     @PostMapping("/sell")
-    public void sellCar(@RequestParam Long carId) {
-        userService.sellCar(carId);
+    public void sellCar(@RequestParam Long carId,
+                        @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey) {
+        idempotencyService.run(idempotencyKey, "sell:" + carId, () -> userService.sellCar(carId));
     }
 }
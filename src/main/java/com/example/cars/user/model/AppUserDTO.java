@@ -5,8 +5,7 @@ import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.Setter;
-
-import java.util.Set;
+import org.springframework.data.domain.Slice;
 
 @Data
 @AllArgsConstructor
@@ -16,5 +15,6 @@ public class AppUserDTO {
 
     private String username;
     private Long balanceInCents;
-    private Set<CarDTO> cars;
+    private Slice<CarDTO> cars;
+    private GarageStatsDTO garageStats;
 }
@@ -0,0 +1,17 @@
+package com.example.cars.user.model;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BalanceAdjustmentRequest {
+    @NotNull
+    private Long userId;
+
+    @NotNull
+    private Long amountInCents;
+}
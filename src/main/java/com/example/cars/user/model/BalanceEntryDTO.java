@@ -0,0 +1,17 @@
+package com.example.cars.user.model;
+
+import com.example.cars.user.persistence.BalanceEntryReason;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+public class BalanceEntryDTO {
+    private Long id;
+    private Long amountInCents;
+    private BalanceEntryReason reason;
+    private Long carId;
+    private Instant createdAt;
+}
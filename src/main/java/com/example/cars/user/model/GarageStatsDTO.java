@@ -0,0 +1,13 @@
+package com.example.cars.user.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class GarageStatsDTO {
+    private Long ownedCarsCount;
+    private Long totalPriceInCents;
+    private Integer latestYear;
+    private Double averageHorsePower;
+}
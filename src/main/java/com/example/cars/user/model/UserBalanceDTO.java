@@ -0,0 +1,11 @@
+package com.example.cars.user.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class UserBalanceDTO {
+    private Long userId;
+    private Long balanceInCents;
+}
@@ -0,0 +1,16 @@
+package com.example.cars.user.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One row of the login projection: a user joined with a single role name (null when the user has no roles).
+ */
+@Data
+@AllArgsConstructor
+public class UserCredentialRow {
+    private Long id;
+    private String username;
+    private String passwordHash;
+    private String roleName;
+}
@@ -0,0 +1,15 @@
+package com.example.cars.user.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Set;
+
+@Data
+@AllArgsConstructor
+public class UserCredentials {
+    private Long id;
+    private String username;
+    private String passwordHash;
+    private Set<String> roleNames;
+}
@@ -0,0 +1,13 @@
+package com.example.cars.user.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum UserSortField {
+    ID("id"),
+    OWNED_CARS_COUNT("ownedCarsCount");
+
+    private final String property;
+}
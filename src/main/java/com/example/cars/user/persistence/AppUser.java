@@ -28,7 +28,13 @@ public class AppUser {
     @Column(name = "balance_in_cents")
     private Long balanceInCents;
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    /**
+     * Size of {@link #cars}, kept in step by the purchase and sell statements so listings need not count the join table.
+     */
+    @Column(name = "owned_cars_count")
+    private int ownedCarsCount;
+
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_car",
             joinColumns = @JoinColumn(name = "user_id"),
@@ -36,7 +42,7 @@ public class AppUser {
     )
     private Set<Car> cars = new HashSet<>();
 
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
     @JoinTable(
             name = "user_role",
             joinColumns = @JoinColumn(name = "user_id"),
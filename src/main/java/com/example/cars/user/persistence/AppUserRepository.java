@@ -3,30 +3,143 @@ package com.example.cars.user.persistence;
 import com.example.cars.model.CarDTO;
 import com.example.cars.user.model.AppUserDTO;
 import com.example.cars.user.model.AppUserInfoDTO;
+import com.example.cars.user.model.GarageStatsDTO;
+import com.example.cars.user.model.UserCredentialRow;
+import com.example.cars.user.model.UserBalanceDTO;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface AppUserRepository extends JpaRepository<AppUser, Long> {
 
-    Optional<AppUser> findByUsername(String username);
+    /**
+     * Only what authentication needs: no balance, garage or entity state. One row per role.
+     */
+    String CREDENTIALS_PROJECTION = "SELECT NEW com.example.cars.user.model.UserCredentialRow(" +
+            "u.id, u.username, u.password, r.name) " +
+            "FROM AppUser u " +
+            "LEFT JOIN u.roles r ";
+
+    @Query(CREDENTIALS_PROJECTION + "WHERE u.username = :username")
+    List<UserCredentialRow> findCredentialsByUsername(String username);
+
+    @Query(CREDENTIALS_PROJECTION + "WHERE u.id = :userId")
+    List<UserCredentialRow> findCredentialsById(Long userId);
+
+    @Query("SELECT u.id FROM AppUser u WHERE u.username = :username")
+    Optional<Long> findIdByUsername(String username);
+
+    /**
+     * Balance snapshot plus the uncompacted ledger tail. Read in one statement, so a concurrent compaction is seen
+     * either completely or not at all.
+     */
+    String CURRENT_BALANCE = "u.balanceInCents + COALESCE((SELECT SUM(b.amountInCents) FROM BalanceEntry b " +
+            "WHERE b.userId = u.id AND b.compacted = false), 0L)";
+
+    @Query("SELECT " + CURRENT_BALANCE + " FROM AppUser u WHERE u.id = :userId")
+    Optional<Long> findBalanceInCents(Long userId);
+
+    /**
+     * Locks the user row until the end of the transaction; serializes debits and compactions of one user.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM AppUser u WHERE u.id = :userId")
+    Optional<AppUser> lockById(Long userId);
+
+    @Query("SELECT NEW com.example.cars.user.model.UserBalanceDTO(u.id, " + CURRENT_BALANCE + ") " +
+            "FROM AppUser u WHERE u.id IN :userIds")
+    List<UserBalanceDTO> findBalances(Collection<Long> userIds);
+
+    /**
+     * Locks several user rows at once, in id order so concurrent callers cannot deadlock.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM AppUser u WHERE u.id IN :userIds ORDER BY u.id")
+    List<AppUser> lockAllById(Collection<Long> userIds);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE AppUser u SET u.balanceInCents = u.balanceInCents + :amountInCents WHERE u.id = :userId")
+    int addToBalanceSnapshot(Long userId, Long amountInCents);
+
+    /**
+     * Links the car to the user unless already owned; returns 0 in that case.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "INSERT INTO cars.user_car (user_id, car_id) SELECT :userId, :carId " +
+            "WHERE NOT EXISTS (SELECT 1 FROM cars.user_car WHERE user_id = :userId AND car_id = :carId)",
+            nativeQuery = true)
+    int addUserCar(Long userId, Long carId);
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM cars.user_car WHERE user_id = :userId AND car_id = :carId)",
+            nativeQuery = true)
+    boolean existsUserCar(Long userId, Long carId);
+
+    /**
+     * Unlinks the car from the user; returns 0 if the user does not own it.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "DELETE FROM cars.user_car WHERE user_id = :userId AND car_id = :carId", nativeQuery = true)
+    int deleteUserCar(Long userId, Long carId);
 
-    @Query("SELECT NEW com.example.cars.model.CarDTO(" +
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE AppUser u SET u.ownedCarsCount = u.ownedCarsCount + :delta WHERE u.id = :userId")
+    int adjustOwnedCarsCount(Long userId, int delta);
+
+    String USER_CARS_PROJECTION = "SELECT NEW com.example.cars.model.CarDTO(" +
             "c.id, c.model, c.year, c.isDriveable, c.priceInCents, " +
-            "NEW com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity), " +
-            "c.imageUrl, c.salesCount) " +
+            "NEW com.example.cars.model.EngineDTO(e.id, e.horsePower, e.capacity, e.version), " +
+            "c.imageUrl, c.salesCount, c.version) " +
             "FROM AppUser u " +
             "JOIN u.cars c " +
             "JOIN c.engine e " +
-            "WHERE u.id = :userId")
+            "WHERE u.id = :userId";
+
+    /**
+     * Lists the compacted balance snapshot, which trails the exact balance by at most one compaction interval, so a
+     * page costs no ledger subquery per row; {@code /users/info/{userId}} reads the exact balance.
+     */
+    String USERS_INFO_PROJECTION = "SELECT NEW com.example.cars.user.model.AppUserInfoDTO(" +
+            "u.id, u.username, u.balanceInCents, u.ownedCarsCount) " +
+            "FROM AppUser u";
+
+    @Query(USER_CARS_PROJECTION)
     Page<CarDTO> findUserCars(Long userId, Pageable pageable);
 
-    @Query("SELECT NEW com.example.cars.user.model.AppUserInfoDTO(" +
-            "u.id, u.username, u.balanceInCents, SIZE(u.cars))" +
-            "FROM AppUser u")
+    @Query(USER_CARS_PROJECTION)
+    Slice<CarDTO> findUserCarSlice(Long userId, Pageable pageable);
+
+    /**
+     * Forward-only cursor over the user's garage; must be consumed inside a transaction and closed by the caller.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(USER_CARS_PROJECTION + " ORDER BY c.id")
+    Stream<CarDTO> streamUserCars(Long userId);
+
+    @Query("SELECT NEW com.example.cars.user.model.GarageStatsDTO(" +
+            "COUNT(c), COALESCE(SUM(c.priceInCents), 0L), MAX(c.year), AVG(e.horsePower)) " +
+            "FROM AppUser u " +
+            "JOIN u.cars c " +
+            "JOIN c.engine e " +
+            "WHERE u.id = :userId")
+    GarageStatsDTO getGarageStats(Long userId);
+
+    @Query(USERS_INFO_PROJECTION)
     Page<AppUserInfoDTO> getAllUsersInfo(Pageable pageable);
+
+    @Query(USERS_INFO_PROJECTION)
+    Slice<AppUserInfoDTO> getAllUsersInfoSlice(Pageable pageable);
 }
@@ -0,0 +1,52 @@
+package com.example.cars.user.persistence;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * One append-only change of a user's balance. {@code app_user.balance_in_cents} is a snapshot that already includes
+ * every compacted entry; the current balance is that snapshot plus the sum of the entries not compacted yet.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@Entity
+@Table(name = "balance_entry", schema = "cars")
+@SequenceGenerator(name = "balance_entry_seq_gen", sequenceName = "balance_entry_seq", allocationSize = 50)
+public class BalanceEntry {
+
+    @Id
+    @GeneratedValue(generator = "balance_entry_seq_gen", strategy = GenerationType.SEQUENCE)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "amount_in_cents")
+    private Long amountInCents;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "reason")
+    private BalanceEntryReason reason;
+
+    @Column(name = "car_id")
+    private Long carId;
+
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    @Column(name = "compacted")
+    private boolean compacted;
+
+    public BalanceEntry(Long userId, Long amountInCents, BalanceEntryReason reason, Long carId) {
+        this.userId = userId;
+        this.amountInCents = amountInCents;
+        this.reason = reason;
+        this.carId = carId;
+        this.createdAt = Instant.now();
+    }
+}
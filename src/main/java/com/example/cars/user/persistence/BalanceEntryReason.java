@@ -0,0 +1,8 @@
+package com.example.cars.user.persistence;
+
+public enum BalanceEntryReason {
+    TOP_UP,
+    WITHDRAWAL,
+    PURCHASE,
+    SALE
+}
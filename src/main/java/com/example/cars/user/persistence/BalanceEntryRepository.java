@@ -0,0 +1,28 @@
+package com.example.cars.user.persistence;
+
+import com.example.cars.user.model.BalanceEntryDTO;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface BalanceEntryRepository extends JpaRepository<BalanceEntry, Long> {
+
+    @Query("SELECT NEW com.example.cars.user.model.BalanceEntryDTO(b.id, b.amountInCents, b.reason, b.carId, b.createdAt) " +
+            "FROM BalanceEntry b WHERE b.userId = :userId ORDER BY b.id DESC")
+    Slice<BalanceEntryDTO> findUserEntries(Long userId, Pageable pageable);
+
+    @Query("SELECT DISTINCT b.userId FROM BalanceEntry b WHERE b.compacted = false")
+    List<Long> findUsersWithUncompactedEntries(Pageable pageable);
+
+    @Query("SELECT b FROM BalanceEntry b WHERE b.userId = :userId AND b.compacted = false")
+    List<BalanceEntry> findUncompactedEntries(Long userId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE BalanceEntry b SET b.compacted = true WHERE b.id IN :ids")
+    int markCompacted(Collection<Long> ids);
+}
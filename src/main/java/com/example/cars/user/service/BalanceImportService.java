@@ -0,0 +1,157 @@
+package com.example.cars.user.service;
+
+import com.example.cars.model.BulkReport;
+import com.example.cars.user.model.BalanceAdjustmentRequest;
+import com.example.cars.user.model.UserBalanceDTO;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntry;
+import com.example.cars.user.persistence.BalanceEntryReason;
+import com.example.cars.utils.BulkRecordReader;
+import com.example.cars.utils.BulkRecordReader.BulkRecord;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceImportService {
+    // Multiple of hibernate.jdbc.batch_size and of the balance_entry_seq allocation size
+    private static final int CHUNK_SIZE = 1000;
+
+    private final AppUserRepository appUserRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Applies a stream of balance adjustments as ledger entries, {@value #CHUNK_SIZE} rows per transaction: one query
+     * reads the balances of the chunk's users, and the accepted rows are inserted in JDBC batches. Only users with a
+     * debit in the chunk are locked, and only until the chunk commits, so long uploads do not hold up purchases.
+     * Rows are applied in order, a debit that the balance (including earlier rows) does not cover is rejected.
+     */
+    public BulkReport importAdjustments(InputStream in, MediaType contentType) throws IOException {
+        BulkReport report = new BulkReport();
+        List<BulkRecord<BalanceAdjustmentRequest>> chunk = new ArrayList<>(CHUNK_SIZE);
+
+        new BulkRecordReader<>(objectMapper, BalanceAdjustmentRequest.class).read(in, contentType, record -> {
+            if (!record.isValid()) {
+                report.recordFailure(record.line(), record.error());
+                return;
+            }
+            String violations = validate(record.value());
+            if (violations != null) {
+                report.recordFailure(record.line(), violations);
+                return;
+            }
+
+            chunk.add(record);
+            if (chunk.size() == CHUNK_SIZE) {
+                apply(chunk, report);
+            }
+        });
+        apply(chunk, report);
+
+        log.info("Bulk balance adjustment finished: {} rows applied, {} rows rejected", report.getApplied(), report.getFailed());
+        return report;
+    }
+
+    private String validate(BalanceAdjustmentRequest request) {
+        Set<ConstraintViolation<BalanceAdjustmentRequest>> violations = validator.validate(request);
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    private void apply(List<BulkRecord<BalanceAdjustmentRequest>> chunk, BulkReport report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // Outcomes reach the report only once the chunk has committed
+        List<Outcome> outcomes;
+        try {
+            outcomes = transactionTemplate.execute(status -> applyChunk(chunk));
+        } catch (RuntimeException e) {
+            log.warn("Applying a chunk of {} balance adjustments failed", chunk.size(), e);
+            chunk.forEach(record -> report.recordFailure(record.line(), "Not applied: " + e.getMessage()));
+            chunk.clear();
+            return;
+        }
+
+        for (Outcome outcome : outcomes) {
+            if (outcome.error() == null) {
+                report.recordSuccess();
+            } else {
+                report.recordFailure(outcome.line(), outcome.error());
+            }
+        }
+        chunk.clear();
+    }
+
+    private List<Outcome> applyChunk(List<BulkRecord<BalanceAdjustmentRequest>> chunk) {
+        Set<Long> debitedUserIds = chunk.stream()
+                .map(BulkRecord::value)
+                .filter(request -> request.getAmountInCents() < 0)
+                .map(BalanceAdjustmentRequest::getUserId)
+                .collect(Collectors.toSet());
+        if (!debitedUserIds.isEmpty()) {
+            appUserRepository.lockAllById(debitedUserIds);
+        }
+
+        Set<Long> userIds = chunk.stream().map(record -> record.value().getUserId()).collect(Collectors.toSet());
+        Map<Long, Long> balances = new HashMap<>();
+        for (UserBalanceDTO balance : appUserRepository.findBalances(userIds)) {
+            balances.put(balance.getUserId(), balance.getBalanceInCents());
+        }
+
+        List<Outcome> outcomes = new ArrayList<>(chunk.size());
+        for (BulkRecord<BalanceAdjustmentRequest> record : chunk) {
+            Long userId = record.value().getUserId();
+            long amountInCents = record.value().getAmountInCents();
+            Long balanceInCents = balances.get(userId);
+            if (balanceInCents == null) {
+                outcomes.add(new Outcome(record.line(), "User with id '" + userId + "' not found"));
+                continue;
+            }
+            if (amountInCents < 0 && balanceInCents < -amountInCents) {
+                outcomes.add(new Outcome(record.line(), "Insufficient funds to decrease the balance, requested amount: "
+                        + -amountInCents + "; balance: " + balanceInCents));
+                continue;
+            }
+
+            balances.put(userId, balanceInCents + amountInCents);
+            BalanceEntryReason reason = amountInCents < 0 ? BalanceEntryReason.WITHDRAWAL : BalanceEntryReason.TOP_UP;
+            entityManager.persist(new BalanceEntry(userId, amountInCents, reason, null));
+            outcomes.add(new Outcome(record.line(), null));
+        }
+        entityManager.flush();
+        entityManager.clear();
+        return outcomes;
+    }
+
+    private record Outcome(long line, String error) {
+    }
+}
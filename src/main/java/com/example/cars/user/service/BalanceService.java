@@ -0,0 +1,97 @@
+package com.example.cars.user.service;
+
+import com.example.cars.error.NotFoundException;
+import com.example.cars.user.model.BalanceEntryDTO;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntry;
+import com.example.cars.user.persistence.BalanceEntryReason;
+import com.example.cars.user.persistence.BalanceEntryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Keeps balances as an append-only ledger. Every change is an inserted {@link BalanceEntry}; credits never touch the
+ * user row, so top-ups and sales do not contend with purchases. Debits lock the user row to check the balance, and
+ * a scheduled compaction folds the ledger tail into {@code app_user.balance_in_cents} to keep balance reads short.
+ */
+@Service
+@Slf4j
+public class BalanceService {
+
+    private final AppUserRepository appUserRepository;
+    private final BalanceEntryRepository balanceEntryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int compactionBatchSize;
+
+    public BalanceService(AppUserRepository appUserRepository,
+                          BalanceEntryRepository balanceEntryRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Value("${cars.balance.compaction-batch-size:1000}") int compactionBatchSize) {
+        this.appUserRepository = appUserRepository;
+        this.balanceEntryRepository = balanceEntryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.compactionBatchSize = compactionBatchSize;
+    }
+
+    public long getBalance(Long userId) {
+        return appUserRepository.findBalanceInCents(userId)
+                .orElseThrow(() -> new NotFoundException("User with id '" + userId + "' not found"));
+    }
+
+    public Slice<BalanceEntryDTO> getEntries(Long userId, int page, int pageSize) {
+        return balanceEntryRepository.findUserEntries(userId, PageRequest.of(page, pageSize));
+    }
+
+    public void credit(Long userId, long amountInCents, BalanceEntryReason reason, Long carId) {
+        balanceEntryRepository.save(new BalanceEntry(userId, amountInCents, reason, carId));
+    }
+
+    /**
+     * Appends a debit if the balance covers it and returns whether it did. Debits of one user are serialized on the
+     * user row, so two of them cannot spend the same funds; a credit committed meanwhile is at worst not counted yet.
+     * An unknown user is a rejection like any other and leaves a surrounding transaction usable.
+     */
+    @Transactional(noRollbackFor = NotFoundException.class)
+    public boolean tryDebit(Long userId, long amountInCents, BalanceEntryReason reason, Long carId) {
+        appUserRepository.lockById(userId)
+                .orElseThrow(() -> new NotFoundException("User with id '" + userId + "' not found"));
+
+        if (getBalance(userId) < amountInCents) {
+            return false;
+        }
+        balanceEntryRepository.save(new BalanceEntry(userId, -amountInCents, reason, carId));
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${cars.balance.compaction-interval-ms:60000}")
+    public void compact() {
+        List<Long> userIds = balanceEntryRepository.findUsersWithUncompactedEntries(PageRequest.of(0, compactionBatchSize));
+        for (Long userId : userIds) {
+            transactionTemplate.executeWithoutResult(status -> compact(userId));
+        }
+        if (!userIds.isEmpty()) {
+            log.debug("Compacted balance entries of {} users", userIds.size());
+        }
+    }
+
+    private void compact(Long userId) {
+        // Debits wait on the lock; credits may keep appending, but only the entries read here are folded in
+        appUserRepository.lockById(userId);
+        List<BalanceEntry> entries = balanceEntryRepository.findUncompactedEntries(userId);
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        long totalInCents = entries.stream().mapToLong(BalanceEntry::getAmountInCents).sum();
+        appUserRepository.addToBalanceSnapshot(userId, totalInCents);
+        balanceEntryRepository.markCompacted(entries.stream().map(BalanceEntry::getId).toList());
+    }
+}
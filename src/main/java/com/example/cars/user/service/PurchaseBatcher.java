@@ -0,0 +1,162 @@
+package com.example.cars.user.service;
+
+import com.example.cars.error.ServiceBusyException;
+import com.example.cars.user.utils.UserUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional group-commit path for purchases. Requests are queued and a single writer thread applies whatever has
+ * accumulated, up to {@code max-batch-size} purchases, in one transaction. Each purchase runs in its own savepoint,
+ * so a rejected purchase is rolled back alone and only its caller sees the error.
+ */
+@Component
+@Slf4j
+public class PurchaseBatcher {
+    private static final long POLL_TIMEOUT_MS = 100;
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final UserService userService;
+    private final UserUtils userUtils;
+    private final TransactionTemplate batchTransaction;
+    private final TransactionTemplate purchaseTransaction;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingPurchase> queue;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public PurchaseBatcher(UserService userService, UserUtils userUtils, PlatformTransactionManager transactionManager,
+                           @Value("${cars.purchase.batching.enabled:false}") boolean enabled,
+                           @Value("${cars.purchase.batching.queue-capacity:10000}") int queueCapacity,
+                           @Value("${cars.purchase.batching.max-batch-size:100}") int maxBatchSize) {
+        this.userService = userService;
+        this.userUtils = userUtils;
+        this.batchTransaction = new TransactionTemplate(transactionManager);
+        this.purchaseTransaction = new TransactionTemplate(transactionManager);
+        this.purchaseTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a purchase by the current user; the returned future completes once the batch holding it has committed.
+     */
+    public CompletableFuture<Void> submit(Long carId) {
+        PendingPurchase purchase = new PendingPurchase(userUtils.getCurrentUserId(), carId, new CompletableFuture<>());
+        if (!running || !queue.offer(purchase)) {
+            throw new ServiceBusyException("Too many purchases in progress, please retry");
+        }
+        return purchase.result();
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = Thread.ofPlatform().name("purchase-writer").daemon().start(this::drain);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join(SHUTDOWN_TIMEOUT_MS);
+        }
+        PendingPurchase purchase;
+        while ((purchase = queue.poll()) != null) {
+            purchase.result().completeExceptionally(new ServiceBusyException("Shutting down, please retry"));
+        }
+    }
+
+    private void drain() {
+        List<PendingPurchase> batch = new ArrayList<>(maxBatchSize);
+        // Keeps draining after stop() until the queue is empty, so accepted purchases are still answered
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingPurchase first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Purchase batch of {} failed", batch.size(), e);
+                batch.forEach(purchase -> purchase.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<PendingPurchase> batch) {
+        Map<PendingPurchase, RuntimeException> failures = new IdentityHashMap<>();
+        try {
+            batchTransaction.executeWithoutResult(status -> {
+                for (PendingPurchase purchase : batch) {
+                    try {
+                        purchaseTransaction.executeWithoutResult(savepoint ->
+                                userService.purchaseInCurrentTransaction(purchase.userId(), purchase.carId()));
+                    } catch (RuntimeException e) {
+                        failures.put(purchase, e);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            // The commit itself failed; fall back to one transaction per purchase so one bad row cannot sink the rest
+            log.warn("Committing a batch of {} purchases failed, retrying them one by one", batch.size(), e);
+            processIndividually(batch);
+            return;
+        }
+
+        for (PendingPurchase purchase : batch) {
+            RuntimeException failure = failures.get(purchase);
+            if (failure == null) {
+                purchase.result().complete(null);
+            } else {
+                purchase.result().completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void processIndividually(List<PendingPurchase> batch) {
+        for (PendingPurchase purchase : batch) {
+            try {
+                userService.purchaseCar(purchase.userId(), purchase.carId());
+                purchase.result().complete(null);
+            } catch (RuntimeException e) {
+                purchase.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    private record PendingPurchase(Long userId, Long carId, CompletableFuture<Void> result) {
+    }
+}
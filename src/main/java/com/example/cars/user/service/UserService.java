@@ -4,22 +4,35 @@ import com.example.cars.error.CarAlreadyPurchasedException;
 import com.example.cars.error.InsufficientFundsException;
 import com.example.cars.error.NotFoundException;
 import com.example.cars.model.CarDTO;
-import com.example.cars.persistence.Car;
+import com.example.cars.model.PaginationMode;
 import com.example.cars.persistence.CarRepository;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.services.SalesLeaderboard;
 import com.example.cars.user.model.AppUserDTO;
 import com.example.cars.user.model.AppUserInfoDTO;
+import com.example.cars.user.model.BalanceEntryDTO;
+import com.example.cars.user.model.GarageStatsDTO;
+import com.example.cars.user.model.UserCredentialRow;
+import com.example.cars.user.model.UserCredentials;
 import com.example.cars.user.model.UserRequest;
+import com.example.cars.user.model.UserSortField;
 import com.example.cars.user.persistence.AppUser;
 import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntryReason;
 import com.example.cars.user.utils.UserUtils;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -34,32 +47,48 @@ public class UserService {
     private final AppUserRepository appUserRepository;
     private final PasswordEncoder passwordEncoder;
     private final RoleService roleService;
+    private final SalesCounter salesCounter;
+    private final SalesLeaderboard salesLeaderboard;
+    private final BalanceService balanceService;
 
-    public Page<CarDTO> getUserCars(int page, int pageSize, Long userId) {
-        return appUserRepository.findUserCars(userId, PageRequest.of(page, pageSize));
+    public Slice<CarDTO> getUserCars(int page, int pageSize, Long userId, PaginationMode mode) {
+        return findUserCars(userId, PageRequest.of(page, pageSize), mode);
     }
 
-    public Page<AppUserInfoDTO> getAllUsersInfo(int page, int pageSize) {
-        return appUserRepository.getAllUsersInfo(PageRequest.of(page, pageSize));
+    public Slice<AppUserInfoDTO> getAllUsersInfo(int page, int pageSize, UserSortField sortField,
+                                                 Sort.Direction direction, PaginationMode mode) {
+        Sort sort = sortField == UserSortField.ID
+                ? Sort.by(direction, "id")
+                : Sort.by(direction, sortField.getProperty()).and(Sort.by(direction, "id"));
+        Pageable pageable = PageRequest.of(page, pageSize, sort);
+        return mode == PaginationMode.SLICE
+                ? appUserRepository.getAllUsersInfoSlice(pageable)
+                : appUserRepository.getAllUsersInfo(pageable);
     }
 
-    public AppUserDTO getUserInfoById(Long userId) {
+    /**
+     * Returns the first {@code carsPageSize} cars of the garage together with statistics aggregated over all of it,
+     * so the response stays bounded however many cars the user owns.
+     */
+    @Transactional(readOnly = true)
+    public AppUserDTO getUserInfoById(Long userId, int carsPageSize) {
         AppUser user = appUserRepository.findById(userId).orElseThrow(() -> new NotFoundException("User with id '" + userId + "' not found"));
 
-        Page<CarDTO> carsPage = appUserRepository.findUserCars(userId, Pageable.unpaged());
-        Set<CarDTO> cars = new HashSet<>(carsPage.getContent());
+        Slice<CarDTO> cars = findUserCars(userId, PageRequest.of(0, carsPageSize), PaginationMode.SLICE);
+        GarageStatsDTO garageStats = appUserRepository.getGarageStats(userId);
 
         return new AppUserDTO(
                 user.getId(),
                 user.getUsername(),
-                user.getBalanceInCents(),
-                cars
+                balanceService.getBalance(userId),
+                cars,
+                garageStats
         );
     }
 
-    public Page<CarDTO> getCurrentUserCars(int page, int pageSize) {
-        Long currentUserId = userUtils.getCurrentUser().getId();
-        return appUserRepository.findUserCars(currentUserId, PageRequest.of(page, pageSize));
+    public Slice<CarDTO> getCurrentUserCars(int page, int pageSize, PaginationMode mode) {
+        Long currentUserId = userUtils.getCurrentUserId();
+        return findUserCars(currentUserId, PageRequest.of(page, pageSize), mode);
     }
 
     public void createUser(UserRequest userRequest) {
@@ -74,51 +103,125 @@ public class UserService {
         appUserRepository.save(appUser);
     }
 
+    @Transactional
     public void purchaseCar(Long carId) {
-        AppUser currentUser = userUtils.getCurrentUser();
-        Car carToAdd = carRepository.findById(carId).orElseThrow(() -> new NotFoundException("Car with id " + carId + " not found"));
+        purchaseCar(userUtils.getCurrentUserId(), carId);
+    }
 
-        if (currentUser.getBalanceInCents() < carToAdd.getPriceInCents()) {
-            throw new InsufficientFundsException("Insufficient funds to purchase the car, price: " + carToAdd.getPriceInCents() + "; balance: " + currentUser.getBalanceInCents());
-        }
+    /**
+     * Buys the car in one transaction: the debit is a ledger entry appended under the user's row lock, so concurrent
+     * purchases cannot double-spend the balance, and linking the car is a conditional insert. The sale itself is counted in memory and flushed in batches by {@link SalesCounter},
+     * which keeps the row of a bestselling car out of every purchase.
+     */
+    @Transactional
+    public void purchaseCar(Long userId, Long carId) {
+        purchaseInCurrentTransaction(userId, carId);
+    }
 
-        if (currentUser.getCars().contains(carToAdd)) {
+    /**
+     * Body of {@link #purchaseCar(Long, Long)} for callers that already hold a transaction. It is deliberately not
+     * transactional, and the one transactional call it makes, {@link BalanceService#tryDebit}, does not roll back on
+     * an unknown user: a rejection only throws and does not mark the surrounding transaction rollback-only, so
+     * {@link PurchaseBatcher} can roll a rejected purchase back to its savepoint and still commit the rest of the batch.
+     */
+    public void purchaseInCurrentTransaction(Long userId, Long carId) {
+        Long priceInCents = carRepository.findPriceInCents(carId)
+                .orElseThrow(() -> new NotFoundException("Car with id " + carId + " not found"));
+
+        // Reject an owned car before the debit takes the user row lock; addUserCar still guards the race
+        if (appUserRepository.existsUserCar(userId, carId)) {
             throw new CarAlreadyPurchasedException("User has already purchased the car");
         }
 
-        currentUser.getCars().add(carToAdd);
-        currentUser.setBalanceInCents(currentUser.getBalanceInCents() - carToAdd.getPriceInCents());
-        appUserRepository.save(currentUser);
+        // Debit before linking: insufficient funds is the common rejection and leaves nothing to roll back
+        if (!balanceService.tryDebit(userId, priceInCents, BalanceEntryReason.PURCHASE, carId)) {
+            throw new InsufficientFundsException("Insufficient funds to purchase the car, price: " + priceInCents + "; balance: " + balanceService.getBalance(userId));
+        }
 
-        carToAdd.setSalesCount(carToAdd.getSalesCount() + 1);
-        carRepository.save(carToAdd);
+        int added;
+        try {
+            added = appUserRepository.addUserCar(userId, carId);
+        } catch (DataIntegrityViolationException e) {
+            // A concurrent purchase of the same car by the same user committed first
+            added = 0;
+        }
+        if (added == 0) {
+            // Rolls back the debit
+            throw new CarAlreadyPurchasedException("User has already purchased the car");
+        }
+        appUserRepository.adjustOwnedCarsCount(userId, 1);
+
+        salesCounter.increment(carId);
+        salesLeaderboard.recordSale(carId);
     }
 
+    /**
+     * Top-ups are appended to the ledger without touching the user row; withdrawals are checked debits.
+     */
+    @Transactional
     public void updateBalance(Long userId, Long amountInCents) {
-        AppUser userToUpdate = appUserRepository.findById(userId).orElseThrow(() -> new NotFoundException("User with id '" + userId + "' not found"));
+        if (!appUserRepository.existsById(userId)) {
+            throw new NotFoundException("User with id '" + userId + "' not found");
+        }
 
-        if (amountInCents < 0 && userToUpdate.getBalanceInCents() < Math.abs(amountInCents)) {
-            throw new InsufficientFundsException("Insufficient funds to decrease the balance, requested amount: " + Math.abs(amountInCents) + "; balance: " + userToUpdate.getBalanceInCents());
+        if (amountInCents >= 0) {
+            balanceService.credit(userId, amountInCents, BalanceEntryReason.TOP_UP, null);
+        } else if (!balanceService.tryDebit(userId, Math.abs(amountInCents), BalanceEntryReason.WITHDRAWAL, null)) {
+            throw new InsufficientFundsException("Insufficient funds to decrease the balance, requested amount: " + Math.abs(amountInCents) + "; balance: " + balanceService.getBalance(userId));
         }
+    }
 
-        userToUpdate.setBalanceInCents(userToUpdate.getBalanceInCents() + amountInCents);
-        appUserRepository.save(userToUpdate);
+    public Slice<BalanceEntryDTO> getBalanceEntries(Long userId, int page, int pageSize) {
+        if (!appUserRepository.existsById(userId)) {
+            throw new NotFoundException("User with id '" + userId + "' not found");
+        }
+        return balanceService.getEntries(userId, page, pageSize);
     }
 
+    /**
+     * Sells the car back with a delete on the ownership row and a credit of the depreciated price, so the cost
+     * does not depend on the size of the user's garage.
+     */
+    @Transactional
     public void sellCar(Long carId) {
-        AppUser currentUser = userUtils.getCurrentUser();
-        Car carToSell = carRepository.findById(carId).orElseThrow(() -> new NotFoundException("Car with id " + carId + " not found"));
+        Long userId = userUtils.getCurrentUserId();
+        Long priceInCents = carRepository.findPriceInCents(carId)
+                .orElseThrow(() -> new NotFoundException("Car with id " + carId + " not found"));
 
-        if (currentUser.getCars().isEmpty() || !currentUser.getCars().contains(carToSell)) {
+        if (appUserRepository.deleteUserCar(userId, carId) == 0) {
             throw new NotFoundException("User has no car with id " + carId);
         }
+        appUserRepository.adjustOwnedCarsCount(userId, -1);
 
-        currentUser.getCars().remove(carToSell);
-        currentUser.setBalanceInCents(currentUser.getBalanceInCents() + Math.round(carToSell.getPriceInCents() * DEPRECIATION_FACTOR));
-        appUserRepository.save(currentUser);
+        balanceService.credit(userId, Math.round(priceInCents * DEPRECIATION_FACTOR), BalanceEntryReason.SALE, carId);
+    }
+
+    public UserCredentials getCredentials(String username) {
+        return toCredentials(appUserRepository.findCredentialsByUsername(username))
+                .orElseThrow(() -> new NotFoundException("User with username '" + username + "' not found"));
+    }
+
+    public UserCredentials getCredentials(Long userId) {
+        return toCredentials(appUserRepository.findCredentialsById(userId))
+                .orElseThrow(() -> new NotFoundException("User with id '" + userId + "' not found"));
+    }
+
+    private static Optional<UserCredentials> toCredentials(List<UserCredentialRow> rows) {
+        if (rows.isEmpty()) {
+            return Optional.empty();
+        }
+        UserCredentialRow first = rows.getFirst();
+        Set<String> roleNames = rows.stream()
+                .map(UserCredentialRow::getRoleName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        return Optional.of(new UserCredentials(first.getId(), first.getUsername(), first.getPasswordHash(), roleNames));
     }
 
-    public AppUser getUser(String username) {
-        return appUserRepository.findByUsername(username).orElseThrow(() -> new NotFoundException("User with username '" + username + "' not found"));
+    private Slice<CarDTO> findUserCars(Long userId, Pageable pageable, PaginationMode mode) {
+        Slice<CarDTO> cars = mode == PaginationMode.SLICE
+                ? appUserRepository.findUserCarSlice(userId, pageable)
+                : appUserRepository.findUserCars(userId, pageable);
+        return cars.map(salesCounter::merge);
     }
 }
@@ -2,7 +2,6 @@ package com.example.cars.user.utils;
 
 import com.example.cars.error.AccessDeniedException;
 import com.example.cars.error.NotFoundException;
-import com.example.cars.user.persistence.AppUser;
 import com.example.cars.user.persistence.AppUserRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -16,15 +15,19 @@ import org.springframework.stereotype.Component;
 public class UserUtils {
     private final AppUserRepository appUserRepository;
 
-    public AppUser getCurrentUser() {
+    public Long getCurrentUserId() {
+        String username = getCurrentUsername();
+
+        return appUserRepository.findIdByUsername(username).orElseThrow(() -> new NotFoundException("User with username '" + username + "' not found"));
+    }
+
+    private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
         if (authentication == null || !authentication.isAuthenticated()) {
             throw new AccessDeniedException("User not authenticated");
         }
 
-        String username = authentication.getName();
-
-        return appUserRepository.findByUsername(username).orElseThrow(() -> new NotFoundException("User with username '" + username + "' not found"));
+        return authentication.getName();
     }
 }
@@ -0,0 +1,120 @@
+package com.example.cars.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.http.MediaType;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads an NDJSON or CSV upload one line at a time and hands every record to a consumer, so uploads of any size
+ * are processed in constant memory. CSV files need a header row naming the target properties; quoted fields may
+ * contain commas and doubled quotes but not line breaks. A line that cannot be parsed is passed on with an error
+ * instead of aborting the upload.
+ */
+public class BulkRecordReader<T> {
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final MediaType TEXT_CSV = MediaType.parseMediaType(TEXT_CSV_VALUE);
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+    private final Class<T> type;
+
+    public BulkRecordReader(ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.readerFor(type);
+        this.type = type;
+    }
+
+    public static boolean supports(MediaType contentType) {
+        return MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType) || TEXT_CSV.isCompatibleWith(contentType);
+    }
+
+    public void read(InputStream in, MediaType contentType, Consumer<BulkRecord<T>> consumer) throws IOException {
+        if (!supports(contentType)) {
+            throw new IllegalArgumentException("Unsupported content type " + contentType + ", expected "
+                    + MediaType.APPLICATION_NDJSON_VALUE + " or " + TEXT_CSV_VALUE);
+        }
+        boolean csv = TEXT_CSV.isCompatibleWith(contentType);
+
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<String> header = null;
+        long lineNumber = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            if (csv && header == null) {
+                header = splitCsv(line).stream().map(String::trim).toList();
+                continue;
+            }
+
+            try {
+                T value = csv ? fromCsv(header, splitCsv(line)) : reader.readValue(line);
+                consumer.accept(new BulkRecord<>(lineNumber, value, null));
+            } catch (IOException | IllegalArgumentException e) {
+                consumer.accept(new BulkRecord<>(lineNumber, null, "Unreadable record: " + e.getMessage()));
+            }
+        }
+    }
+
+    private T fromCsv(List<String> header, List<String> fields) {
+        if (fields.size() != header.size()) {
+            throw new IllegalArgumentException("expected " + header.size() + " fields but found " + fields.size());
+        }
+        Map<String, String> properties = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            String field = fields.get(i).trim();
+            properties.put(header.get(i), field.isEmpty() ? null : field);
+        }
+        return objectMapper.convertValue(properties, type);
+    }
+
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * A parsed upload line: either {@code value} or {@code error} is set.
+     */
+    public record BulkRecord<T>(long line, T value, String error) {
+        public boolean isValid() {
+            return error == null;
+        }
+    }
+}
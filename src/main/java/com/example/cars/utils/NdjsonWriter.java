@@ -0,0 +1,47 @@
+package com.example.cars.utils;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one JSON document per line to an output stream it does not own. Values are serialized
+ * straight into the stream's buffer and flushed every {@code flushEvery} lines, so memory use
+ * does not depend on how many values are written.
+ */
+public class NdjsonWriter implements Closeable {
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+    private final int flushEvery;
+    private long count;
+
+    public NdjsonWriter(ObjectMapper objectMapper, OutputStream out, int flushEvery) throws IOException {
+        this.generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.generator.setRootValueSeparator(null);
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.flushEvery = flushEvery;
+    }
+
+    public void write(Object value) throws IOException {
+        writer.writeValue(generator, value);
+        generator.writeRaw('\n');
+        if (++count % flushEvery == 0) {
+            generator.flush();
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,3 @@
+CREATE INDEX IF NOT EXISTS car_price_in_cents_id_idx ON cars.car (PRICE_IN_CENTS, ID);
+
+CREATE INDEX IF NOT EXISTS car_sales_count_id_idx ON cars.car (SALES_COUNT, ID);
@@ -0,0 +1,11 @@
+CREATE INDEX IF NOT EXISTS car_engine_id_idx ON cars.car (ENGINE_ID);
+
+CREATE INDEX IF NOT EXISTS car_year_id_idx ON cars.car (YEAR, ID);
+
+CREATE INDEX IF NOT EXISTS car_year_price_in_cents_idx ON cars.car (YEAR, PRICE_IN_CENTS);
+
+CREATE INDEX IF NOT EXISTS car_is_driveable_price_in_cents_idx ON cars.car (IS_DRIVEABLE, PRICE_IN_CENTS);
+
+CREATE INDEX IF NOT EXISTS engine_horse_power_capacity_idx ON cars.engine (HORSE_POWER, CAPACITY);
+
+CREATE INDEX IF NOT EXISTS engine_capacity_horse_power_idx ON cars.engine (CAPACITY, HORSE_POWER);
@@ -0,0 +1,3 @@
+ALTER TABLE cars.engine ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 0 NOT NULL;
+
+ALTER TABLE cars.car ADD COLUMN IF NOT EXISTS VERSION BIGINT DEFAULT 0 NOT NULL;
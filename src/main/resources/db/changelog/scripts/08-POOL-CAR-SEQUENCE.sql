@@ -0,0 +1,3 @@
+ALTER SEQUENCE cars.car_seq INCREMENT BY 50;
+
+SELECT setval('cars.car_seq', GREATEST((SELECT COALESCE(MAX(ID), 0) FROM cars.car), (SELECT last_value FROM cars.car_seq)) + 100);
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS cars.idempotency_key
+(
+    ID          VARCHAR(400)  NOT NULL PRIMARY KEY,
+    FINGERPRINT VARCHAR(512)  NOT NULL,
+    CREATED_AT  TIMESTAMP     NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_idempotency_key_created_at ON cars.idempotency_key (CREATED_AT);
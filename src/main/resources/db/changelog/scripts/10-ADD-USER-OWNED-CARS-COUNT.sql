@@ -0,0 +1,6 @@
+ALTER TABLE cars.app_user ADD COLUMN IF NOT EXISTS OWNED_CARS_COUNT INT DEFAULT 0 NOT NULL;
+
+UPDATE cars.app_user u
+SET OWNED_CARS_COUNT = (SELECT COUNT(*) FROM cars.user_car uc WHERE uc.USER_ID = u.ID);
+
+CREATE INDEX IF NOT EXISTS app_user_owned_cars_count_id_idx ON cars.app_user (OWNED_CARS_COUNT, ID);
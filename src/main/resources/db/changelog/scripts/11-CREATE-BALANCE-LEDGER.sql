@@ -0,0 +1,19 @@
+CREATE TABLE IF NOT EXISTS cars.balance_entry
+(
+    ID              BIGINT                NOT NULL PRIMARY KEY,
+    USER_ID         BIGINT                NOT NULL,
+    AMOUNT_IN_CENTS BIGINT                NOT NULL,
+    REASON          VARCHAR(20)           NOT NULL,
+    CAR_ID          BIGINT,
+    CREATED_AT      TIMESTAMP             NOT NULL,
+    COMPACTED       BOOLEAN DEFAULT FALSE NOT NULL,
+    FOREIGN KEY (USER_ID) REFERENCES APP_USER (ID)
+);
+
+CREATE SEQUENCE IF NOT EXISTS cars.balance_entry_seq
+    INCREMENT 50
+    START 1;
+
+CREATE INDEX IF NOT EXISTS balance_entry_user_id_id_idx ON cars.balance_entry (USER_ID, ID);
+
+CREATE INDEX IF NOT EXISTS balance_entry_uncompacted_idx ON cars.balance_entry (USER_ID) WHERE NOT COMPACTED;
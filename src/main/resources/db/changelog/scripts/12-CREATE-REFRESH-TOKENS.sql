@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS cars.refresh_token
+(
+    ID         VARCHAR(64) NOT NULL PRIMARY KEY,
+    USER_ID    BIGINT      NOT NULL,
+    EXPIRES_AT TIMESTAMP   NOT NULL,
+    FOREIGN KEY (USER_ID) REFERENCES APP_USER (ID)
+);
+
+CREATE INDEX IF NOT EXISTS refresh_token_expires_at_idx ON cars.refresh_token (EXPIRES_AT);
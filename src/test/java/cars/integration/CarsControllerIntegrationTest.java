@@ -7,6 +7,8 @@ import com.example.cars.persistence.Car;
 import com.example.cars.persistence.CarRepository;
 import com.example.cars.persistence.Engine;
 import com.example.cars.persistence.EngineRepository;
+import com.example.cars.services.SalesLeaderboard;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -14,6 +16,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -21,8 +24,13 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Arrays;
+
 import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -44,6 +52,9 @@ public class CarsControllerIntegrationTest {
     @Autowired
     private EngineRepository engineRepository;
 
+    @Autowired
+    private SalesLeaderboard salesLeaderboard;
+
     private Engine testEngine;
     private Car testCar;
 
@@ -90,6 +101,79 @@ public class CarsControllerIntegrationTest {
                 .andExpect(jsonPath("$.engine.id", is(testEngine.getId().intValue())));
     }
 
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void testGetCarByIdWithMatchingETag() throws Exception {
+        String eTag = mockMvc.perform(get("/cars/{id}", testCar.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/cars/{id}", testCar.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        mockMvc.perform(get("/cars/{id}", testCar.getId())
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"stale\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id", is(testCar.getId().intValue())));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void testGetAllCarsWithMatchingETag() throws Exception {
+        String eTag = mockMvc.perform(get("/cars").param("pageSize", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/cars").param("pageSize", "10")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        testCar.setPriceInCents(9000L);
+        carRepository.saveAndFlush(testCar);
+
+        mockMvc.perform(get("/cars").param("pageSize", "10")
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(eTag)))
+                .andExpect(jsonPath("$.content[0].priceInCents", is(9000)));
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void testExportCars() throws Exception {
+        String body = mockMvc.perform(get("/cars/export"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith(MediaType.APPLICATION_NDJSON_VALUE)))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(carRepository.count(), lines.length);
+        JsonNode exported = Arrays.stream(lines)
+                .map(line -> assertDoesNotThrow(() -> objectMapper.readTree(line)))
+                .filter(car -> car.get("id").asLong() == testCar.getId())
+                .findFirst().orElseThrow();
+        assertEquals(testCar.getModel(), exported.get("model").asText());
+        assertEquals(testEngine.getId(), exported.get("engine").get("id").asLong());
+    }
+
+    @Test
+    @WithMockUser(roles = {"USER"})
+    void testGetTopSellers() throws Exception {
+        testCar.setSalesCount(1_000_000L);
+        carRepository.saveAndFlush(testCar);
+        salesLeaderboard.load();
+
+        mockMvc.perform(get("/cars/top")
+                        .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id", is(testCar.getId().intValue())))
+                .andExpect(jsonPath("$[0].salesCount", is(1_000_000)));
+    }
+
     @Test
     @WithMockUser(roles = {"USER"})
     void testGetCarByIdWithNonExistentCar() throws Exception {
@@ -141,6 +225,51 @@ public class CarsControllerIntegrationTest {
                 .andExpect(status().isCreated());
     }
 
+    @Test
+    @WithMockUser(roles = {"ADMIN"})
+    void testBulkImportNdjson() throws Exception {
+        long carsBefore = carRepository.count();
+        String body = String.join("\n",
+                objectMapper.writeValueAsString(new CarRequest("Bulk One", 2021, true, 1000L, testEngine.getId())),
+                "{not json",
+                objectMapper.writeValueAsString(new CarRequest("Bulk Two", 1900, true, 1000L, testEngine.getId())),
+                objectMapper.writeValueAsString(new CarRequest("Bulk Three", 2022, false, 2000L, 999999L)),
+                objectMapper.writeValueAsString(new CarRequest("Bulk Four", 2023, true, 3000L, testEngine.getId())));
+
+        mockMvc.perform(post("/cars/bulk")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received", is(5)))
+                .andExpect(jsonPath("$.applied", is(2)))
+                .andExpect(jsonPath("$.failed", is(3)))
+                .andExpect(jsonPath("$.errors[*].line", contains(2, 3, 4)))
+                .andExpect(jsonPath("$.errors[2].message", containsString("999999")));
+
+        assertEquals(carsBefore + 2, carRepository.count());
+    }
+
+    @Test
+    @WithMockUser(roles = {"ADMIN"})
+    void testBulkImportCsv() throws Exception {
+        long carsBefore = carRepository.count();
+        String body = "model,year,driveable,priceInCents,engineId\n"
+                + "\"Roadster, Mk \"\"II\"\"\",2020,true,5000," + testEngine.getId() + "\n"
+                + "Missing Price,2020,true,," + testEngine.getId() + "\n";
+
+        mockMvc.perform(post("/cars/bulk")
+                        .contentType("text/csv")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.applied", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)))
+                .andExpect(jsonPath("$.errors[0].message", containsString("priceInCents")));
+
+        assertEquals(carsBefore + 1, carRepository.count());
+        mockMvc.perform(get("/cars/search").param("q", "Roadster"))
+                .andExpect(jsonPath("$[0].model", is("Roadster, Mk \"II\"")));
+    }
+
     @Test
     @WithMockUser(roles = {"ADMIN"})
     void testUpdateCarPrice() throws Exception {
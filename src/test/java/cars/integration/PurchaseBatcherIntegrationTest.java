@@ -0,0 +1,207 @@
+package cars.integration;
+
+import cars.configuration.TestConfig;
+import com.example.cars.CarsApplication;
+import com.example.cars.error.InsufficientFundsException;
+import com.example.cars.error.NotFoundException;
+import com.example.cars.persistence.Car;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.persistence.Engine;
+import com.example.cars.persistence.EngineRepository;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.user.persistence.AppUser;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.service.PurchaseBatcher;
+import com.example.cars.user.service.UserService;
+import com.example.cars.user.utils.UserUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a purchase batch on the real JPA transaction manager: a rejected purchase must be rolled back to its savepoint
+ * while the other purchases of the same batch commit with it. Uses committed transactions, so it cleans up after itself.
+ */
+@Import(TestConfig.class)
+@SpringBootTest(classes = CarsApplication.class)
+@ActiveProfiles("test")
+public class PurchaseBatcherIntegrationTest {
+    private static final long PRICE_IN_CENTS = 5000L;
+    private static final long UNKNOWN_USER_ID = Long.MAX_VALUE;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private EngineRepository engineRepository;
+
+    @Autowired
+    private SalesCounter salesCounter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Engine engine;
+    private Car car;
+    private AppUser blocker;
+    private AppUser firstBuyer;
+    private AppUser brokeBuyer;
+    private AppUser lastBuyer;
+    private PurchaseBatcher purchaseBatcher;
+
+    @BeforeEach
+    void setUp() {
+        engine = new Engine();
+        engine.setHorsePower(200);
+        engine.setCapacity(2.0);
+        engine = engineRepository.save(engine);
+
+        car = new Car();
+        car.setModel("Batched Model");
+        car.setYear(2024);
+        car.setDriveable(true);
+        car.setPriceInCents(PRICE_IN_CENTS);
+        car.setEngine(engine);
+        car = carRepository.save(car);
+
+        blocker = saveUser("batch-blocker", PRICE_IN_CENTS);
+        firstBuyer = saveUser("batch-first", PRICE_IN_CENTS);
+        brokeBuyer = saveUser("batch-broke", PRICE_IN_CENTS - 1);
+        lastBuyer = saveUser("batch-last", PRICE_IN_CENTS);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (purchaseBatcher != null) {
+            purchaseBatcher.stop();
+        }
+        jdbcTemplate.update("DELETE FROM cars.user_car WHERE car_id = ?", car.getId());
+        jdbcTemplate.update("DELETE FROM cars.balance_entry WHERE car_id = ?", car.getId());
+        userRepository.deleteAll(List.of(blocker, firstBuyer, brokeBuyer, lastBuyer));
+        carRepository.deleteById(car.getId());
+        salesCounter.discard(car.getId());
+        engineRepository.deleteById(engine.getId());
+    }
+
+    @Test
+    void testRejectedPurchaseDoesNotFailItsBatch() throws Exception {
+        UserService batchedUserService = mock(UserService.class, delegatesTo(userService));
+        List<CompletableFuture<Void>> purchases = submitBatch(batchedUserService, brokeBuyer.getId());
+
+        assertNull(purchases.get(0).get(5, TimeUnit.SECONDS));
+        assertNull(purchases.get(1).get(5, TimeUnit.SECONDS));
+        assertNull(purchases.get(3).get(5, TimeUnit.SECONDS));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> purchases.get(2).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InsufficientFundsException.class, exception.getCause());
+
+        // Committed as batches, never replayed one purchase at a time
+        verify(batchedUserService, times(4)).purchaseInCurrentTransaction(anyLong(), eq(car.getId()));
+        verify(batchedUserService, never()).purchaseCar(anyLong(), anyLong());
+
+        assertEquals(0L, userRepository.findBalanceInCents(firstBuyer.getId()).orElseThrow());
+        assertEquals(0L, userRepository.findBalanceInCents(lastBuyer.getId()).orElseThrow());
+        assertEquals(PRICE_IN_CENTS - 1, userRepository.findBalanceInCents(brokeBuyer.getId()).orElseThrow());
+        assertEquals(3, countOwners());
+    }
+
+    @Test
+    void testPurchaseByUnknownUserDoesNotFailItsBatch() throws Exception {
+        UserService batchedUserService = mock(UserService.class, delegatesTo(userService));
+        List<CompletableFuture<Void>> purchases = submitBatch(batchedUserService, UNKNOWN_USER_ID);
+
+        assertNull(purchases.get(0).get(5, TimeUnit.SECONDS));
+        assertNull(purchases.get(1).get(5, TimeUnit.SECONDS));
+        assertNull(purchases.get(3).get(5, TimeUnit.SECONDS));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> purchases.get(2).get(5, TimeUnit.SECONDS));
+        assertInstanceOf(NotFoundException.class, exception.getCause());
+
+        // The failed debit must not have doomed the shared transaction and sent the batch down the fallback path
+        verify(batchedUserService, never()).purchaseCar(anyLong(), anyLong());
+
+        assertEquals(0L, userRepository.findBalanceInCents(firstBuyer.getId()).orElseThrow());
+        assertEquals(0L, userRepository.findBalanceInCents(lastBuyer.getId()).orElseThrow());
+        assertEquals(3, countOwners());
+    }
+
+    /**
+     * Submits a purchase by the blocker, then one each by the first buyer, the given user and the last buyer. The
+     * first purchase holds the writer until the other three are queued, so they form the next batch together.
+     */
+    private List<CompletableFuture<Void>> submitBatch(UserService batchedUserService, Long thirdUserId) throws InterruptedException {
+        UserUtils userUtils = mock(UserUtils.class);
+        when(userUtils.getCurrentUserId())
+                .thenReturn(blocker.getId(), firstBuyer.getId(), thirdUserId, lastBuyer.getId());
+
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean blocked = new AtomicBoolean();
+        doAnswer(invocation -> {
+            if (blocked.compareAndSet(false, true)) {
+                writerBusy.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            userService.purchaseInCurrentTransaction(invocation.getArgument(0), invocation.getArgument(1));
+            return null;
+        }).when(batchedUserService).purchaseInCurrentTransaction(anyLong(), anyLong());
+
+        purchaseBatcher = new PurchaseBatcher(batchedUserService, userUtils, transactionManager, true, 10, 10);
+        purchaseBatcher.start();
+
+        CompletableFuture<Void> blocking = purchaseBatcher.submit(car.getId());
+        writerBusy.await(5, TimeUnit.SECONDS);
+        List<CompletableFuture<Void>> purchases = List.of(blocking,
+                purchaseBatcher.submit(car.getId()),
+                purchaseBatcher.submit(car.getId()),
+                purchaseBatcher.submit(car.getId()));
+        release.countDown();
+        return purchases;
+    }
+
+    private int countOwners() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cars.user_car WHERE car_id = ?", Integer.class, car.getId());
+    }
+
+    private AppUser saveUser(String username, long balanceInCents) {
+        AppUser user = new AppUser();
+        user.setUsername(username);
+        user.setPassword("password");
+        user.setBalanceInCents(balanceInCents);
+        return userRepository.save(user);
+    }
+}
@@ -0,0 +1,194 @@
+package cars.integration;
+
+import cars.configuration.TestConfig;
+import com.example.cars.CarsApplication;
+import com.example.cars.error.CarAlreadyPurchasedException;
+import com.example.cars.error.InsufficientFundsException;
+import com.example.cars.persistence.Car;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.persistence.Engine;
+import com.example.cars.persistence.EngineRepository;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.user.persistence.AppUser;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hammers a single popular car from many threads, with every user clicking "buy" twice at once, and checks
+ * that no balance is double-spent and no sale is lost. Runs against committed transactions, so it cleans up
+ * after itself instead of relying on test rollback.
+ */
+@Import(TestConfig.class)
+@SpringBootTest(classes = CarsApplication.class)
+@ActiveProfiles("test")
+public class PurchaseContentionBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(PurchaseContentionBenchmarkTest.class);
+
+    private static final int USERS = 100;
+    private static final int ATTEMPTS_PER_USER = 2;
+    private static final int THREADS = 16;
+    private static final int MAX_RETRIES = 10;
+    private static final long PRICE_IN_CENTS = 5000L;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private AppUserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private EngineRepository engineRepository;
+
+    @Autowired
+    private SalesCounter salesCounter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Engine engine;
+    private Car popularCar;
+    private final List<AppUser> fundedUsers = new ArrayList<>();
+    private final List<AppUser> brokeUsers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        engine = new Engine();
+        engine.setHorsePower(400);
+        engine.setCapacity(4.0);
+        engine = engineRepository.save(engine);
+
+        popularCar = new Car();
+        popularCar.setModel("Popular Model");
+        popularCar.setYear(2024);
+        popularCar.setDriveable(true);
+        popularCar.setPriceInCents(PRICE_IN_CENTS);
+        popularCar.setEngine(engine);
+        popularCar = carRepository.save(popularCar);
+
+        for (int i = 0; i < USERS; i++) {
+            boolean funded = i % 2 == 0;
+            AppUser user = new AppUser();
+            user.setUsername("buyer" + i);
+            user.setPassword("password");
+            // Funded users can afford exactly one purchase, broke users none
+            user.setBalanceInCents(funded ? PRICE_IN_CENTS : PRICE_IN_CENTS - 1);
+            user = userRepository.save(user);
+            (funded ? fundedUsers : brokeUsers).add(user);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM cars.user_car WHERE car_id = ?", popularCar.getId());
+        jdbcTemplate.update("DELETE FROM cars.balance_entry WHERE car_id = ?", popularCar.getId());
+        userRepository.deleteAll(fundedUsers);
+        userRepository.deleteAll(brokeUsers);
+        carRepository.deleteById(popularCar.getId());
+        salesCounter.discard(popularCar.getId());
+        engineRepository.deleteById(engine.getId());
+    }
+
+    @Test
+    void testConcurrentPurchasesOfOnePopularCar() throws Exception {
+        AtomicInteger purchased = new AtomicInteger();
+        AtomicInteger alreadyPurchased = new AtomicInteger();
+        AtomicInteger insufficientFunds = new AtomicInteger();
+        AtomicInteger retries = new AtomicInteger();
+
+        List<Long> attempts = new ArrayList<>();
+        for (int i = 0; i < ATTEMPTS_PER_USER; i++) {
+            fundedUsers.forEach(user -> attempts.add(user.getId()));
+            brokeUsers.forEach(user -> attempts.add(user.getId()));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (Long userId : attempts) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int attempt = 0; ; attempt++) {
+                    try {
+                        userService.purchaseCar(userId, popularCar.getId());
+                        purchased.incrementAndGet();
+                        return null;
+                    } catch (CarAlreadyPurchasedException e) {
+                        alreadyPurchased.incrementAndGet();
+                        return null;
+                    } catch (InsufficientFundsException e) {
+                        insufficientFunds.incrementAndGet();
+                        return null;
+                    } catch (DataAccessException e) {
+                        // Lock timeouts and serialization failures are retried like a client would
+                        if (attempt == MAX_RETRIES) {
+                            throw e;
+                        }
+                        retries.incrementAndGet();
+                    }
+                }
+            }));
+        }
+
+        long startedAt = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        long elapsedNanos = System.nanoTime() - startedAt;
+        executor.shutdown();
+
+        log.info("{} purchase attempts on one car with {} threads in {} ms ({} attempts/s): "
+                        + "{} purchased, {} already owned, {} insufficient funds, {} retried",
+                attempts.size(), THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                Math.round(attempts.size() / (elapsedNanos / 1e9)),
+                purchased.get(), alreadyPurchased.get(), insufficientFunds.get(), retries.get());
+
+        // Every funded user buys exactly once, their duplicate click is rejected one way or the other
+        assertEquals(fundedUsers.size(), purchased.get());
+        assertEquals(attempts.size(), purchased.get() + alreadyPurchased.get() + insufficientFunds.get());
+
+        salesCounter.flush();
+        Car car = carRepository.findById(popularCar.getId()).orElseThrow();
+        assertEquals(purchased.get(), car.getSalesCount(), "No sale may be lost when flushing");
+        assertEquals(0, salesCounter.pendingDelta(popularCar.getId()));
+        Integer owners = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM cars.user_car WHERE car_id = ?", Integer.class, popularCar.getId());
+        assertEquals(purchased.get(), owners);
+
+        for (AppUser user : fundedUsers) {
+            Long balance = userRepository.findBalanceInCents(user.getId()).orElseThrow();
+            assertEquals(0L, balance, "Funded users must be charged exactly once");
+        }
+        for (AppUser user : brokeUsers) {
+            Long balance = userRepository.findBalanceInCents(user.getId()).orElseThrow();
+            assertTrue(balance >= 0);
+            assertEquals(PRICE_IN_CENTS - 1, balance, "Broke users must not be charged");
+        }
+    }
+}
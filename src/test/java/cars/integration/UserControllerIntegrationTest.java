@@ -1,7 +1,10 @@
 package cars.integration;
 
 import com.example.cars.CarsApplication;
+import com.example.cars.auth.LoginRequest;
+import com.example.cars.auth.RefreshRequest;
 import com.example.cars.error.NotFoundException;
+import com.example.cars.idempotency.IdempotencyService;
 import com.example.cars.persistence.Car;
 import com.example.cars.persistence.CarRepository;
 import com.example.cars.persistence.Engine;
@@ -9,8 +12,11 @@ import com.example.cars.persistence.EngineRepository;
 import com.example.cars.user.model.UserRequest;
 import com.example.cars.user.persistence.AppUser;
 import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntryReason;
 import com.example.cars.user.persistence.Role;
 import com.example.cars.user.persistence.RoleRepository;
+import com.example.cars.user.service.BalanceService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -18,7 +24,9 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
@@ -26,11 +34,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.util.HashSet;
 import java.util.Set;
+import java.util.UUID;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -58,6 +68,12 @@ public class UserControllerIntegrationTest {
     @Autowired
     private EngineRepository engineRepository;
 
+    @Autowired
+    private BalanceService balanceService;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
     private Role userRole;
     private Role adminRole;
     private AppUser testUser;
@@ -147,7 +163,7 @@ public class UserControllerIntegrationTest {
                         .content(objectMapper.writeValueAsString(userRequest)))
                 .andExpect(status().isOk());
 
-        AppUser createdUser = userRepository.findByUsername("newuser").orElse(null);
+        AppUser createdUser = userRepository.findIdByUsername("newuser").flatMap(userRepository::findById).orElse(null);
         assertNotNull(createdUser);
         assertEquals("newuser", createdUser.getUsername());
         assertEquals(15000L, createdUser.getBalanceInCents());
@@ -164,6 +180,42 @@ public class UserControllerIntegrationTest {
                 .andExpect(jsonPath("$.content[*].username", containsInAnyOrder("testuser", "testadmin")));
     }
 
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testGetAllUsersInfoListsCompactedBalance() throws Exception {
+        balanceService.credit(testUser.getId(), 5000L, BalanceEntryReason.TOP_UP, null);
+
+        mockMvc.perform(get("/users/info"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[?(@.username == 'testuser')].balanceInCents", contains(10000)));
+        mockMvc.perform(get("/users/info/{userId}", testUser.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.balanceInCents", is(15000)));
+
+        balanceService.compact();
+
+        mockMvc.perform(get("/users/info"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[?(@.username == 'testuser')].balanceInCents", contains(15000)));
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testGetAllUsersInfoSortedByOwnedCarsCount() throws Exception {
+        testUser.getCars().add(testCar);
+        testUser.setOwnedCarsCount(1);
+        userRepository.saveAndFlush(testUser);
+
+        mockMvc.perform(get("/users/info")
+                        .param("sortBy", "OWNED_CARS_COUNT")
+                        .param("direction", "DESC"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].username", is("testuser")))
+                .andExpect(jsonPath("$.content[0].ownedCarsCount", is(1)))
+                .andExpect(jsonPath("$.content[1].username", is("testadmin")))
+                .andExpect(jsonPath("$.content[1].ownedCarsCount", is(0)));
+    }
+
     @Test
     @WithMockUser(username = "testadmin", roles = "ADMIN")
     void testGetUserInfoById() throws Exception {
@@ -174,6 +226,52 @@ public class UserControllerIntegrationTest {
                 .andExpect(jsonPath("$.balanceInCents", is(10000)));
     }
 
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testGetUserInfoByIdRejectsInvalidCarsPageSize() throws Exception {
+        mockMvc.perform(get("/users/info/{userId}", testUser.getId())
+                        .param("carsPageSize", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/info/{userId}", testUser.getId())
+                        .param("carsPageSize", "101"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testGetUserInfoByIdWithGarageStats() throws Exception {
+        testUser.getCars().add(testCar);
+        testUser.getCars().add(expensiveCar);
+        userRepository.saveAndFlush(testUser);
+
+        mockMvc.perform(get("/users/info/{userId}", testUser.getId())
+                        .param("carsPageSize", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cars.content", hasSize(1)))
+                .andExpect(jsonPath("$.cars.last", is(false)))
+                .andExpect(jsonPath("$.garageStats.ownedCarsCount", is(2)))
+                .andExpect(jsonPath("$.garageStats.totalPriceInCents", is(20000)))
+                .andExpect(jsonPath("$.garageStats.latestYear", is(2024)))
+                .andExpect(jsonPath("$.garageStats.averageHorsePower", is(300.0)));
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testExportUserCars() throws Exception {
+        testUser.getCars().add(testCar);
+        testUser.getCars().add(expensiveCar);
+        userRepository.saveAndFlush(testUser);
+
+        String body = mockMvc.perform(get("/users/{userId}/ownedCars/export", testUser.getId()))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith(MediaType.APPLICATION_NDJSON_VALUE)))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(Math.min(testCar.getId(), expensiveCar.getId()), objectMapper.readTree(lines[0]).get("id").asLong());
+    }
+
     @Test
     @WithMockUser(username = "testadmin", roles = "ADMIN")
     void testGetUserInfoByIdWithNonExistentUser() throws Exception {
@@ -192,7 +290,7 @@ public class UserControllerIntegrationTest {
 
         AppUser updatedUser = userRepository.findById(testUser.getId()).orElse(null);
         assertNotNull(updatedUser);
-        assertEquals(15000L, updatedUser.getBalanceInCents());
+        assertEquals(15000L, balanceService.getBalance(updatedUser.getId()));
     }
 
     @Test
@@ -206,7 +304,98 @@ public class UserControllerIntegrationTest {
 
         AppUser updatedUser = userRepository.findById(testUser.getId()).orElse(null);
         assertNotNull(updatedUser);
-        assertEquals(10000L, updatedUser.getBalanceInCents());
+        assertEquals(10000L, balanceService.getBalance(updatedUser.getId()));
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testBalanceChangesAreRecordedInLedger() throws Exception {
+        mockMvc.perform(patch("/users/{userId}/addFundsToBalance", testUser.getId())
+                        .with(csrf())
+                        .param("amountInCents", "5000"))
+                .andExpect(status().isOk());
+        mockMvc.perform(patch("/users/{userId}/addFundsToBalance", testUser.getId())
+                        .with(csrf())
+                        .param("amountInCents", "-2000"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/users/{userId}/balanceEntries", testUser.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(2)))
+                .andExpect(jsonPath("$.content[0].amountInCents", is(-2000)))
+                .andExpect(jsonPath("$.content[0].reason", is("WITHDRAWAL")))
+                .andExpect(jsonPath("$.content[1].amountInCents", is(5000)))
+                .andExpect(jsonPath("$.content[1].reason", is("TOP_UP")));
+
+        balanceService.compact();
+
+        assertEquals(13000L, balanceService.getBalance(testUser.getId()));
+        assertEquals(13000L, userRepository.findById(testUser.getId()).orElseThrow().getBalanceInCents());
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testBulkAdjustBalances() throws Exception {
+        String body = String.join("\n",
+                "userId,amountInCents",
+                testUser.getId() + ",5000",
+                testAdmin.getId() + ",-20000",
+                testUser.getId() + ",-16000",
+                "999999,100",
+                testUser.getId() + ",abc");
+
+        mockMvc.perform(post("/users/balances/bulk")
+                        .with(csrf())
+                        .contentType("text/csv")
+                        .content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.received", is(5)))
+                .andExpect(jsonPath("$.applied", is(2)))
+                .andExpect(jsonPath("$.failed", is(3)))
+                .andExpect(jsonPath("$.errors[*].line", containsInAnyOrder(4, 5, 6)))
+                .andExpect(jsonPath("$.errors[*].message", hasItem(containsString("Insufficient funds"))));
+
+        assertEquals(15000L, balanceService.getBalance(testUser.getId()));
+        assertEquals(0L, balanceService.getBalance(testAdmin.getId()));
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testUpdateBalanceReplayedWithIdempotencyKey() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        for (int attempt = 0; attempt < 2; attempt++) {
+            mockMvc.perform(patch("/users/{userId}/addFundsToBalance", testUser.getId())
+                            .with(csrf())
+                            .header(IdempotencyService.HEADER, idempotencyKey)
+                            .param("amountInCents", "5000"))
+                    .andExpect(status().isOk());
+        }
+
+        AppUser updatedUser = userRepository.findById(testUser.getId()).orElse(null);
+        assertNotNull(updatedUser);
+        assertEquals(15000L, balanceService.getBalance(updatedUser.getId()));
+    }
+
+    @Test
+    @WithMockUser(username = "testadmin", roles = "ADMIN")
+    void testIdempotencyKeyReusedForDifferentRequest() throws Exception {
+        String idempotencyKey = UUID.randomUUID().toString();
+        mockMvc.perform(patch("/users/{userId}/addFundsToBalance", testUser.getId())
+                        .with(csrf())
+                        .header(IdempotencyService.HEADER, idempotencyKey)
+                        .param("amountInCents", "5000"))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(patch("/users/{userId}/addFundsToBalance", testUser.getId())
+                        .with(csrf())
+                        .header(IdempotencyService.HEADER, idempotencyKey)
+                        .param("amountInCents", "7000"))
+                .andExpect(status().isUnprocessableEntity())
+                .andExpect(jsonPath("$.errorMessage", containsString(idempotencyKey)));
+
+        AppUser updatedUser = userRepository.findById(testUser.getId()).orElse(null);
+        assertNotNull(updatedUser);
+        assertEquals(15000L, balanceService.getBalance(updatedUser.getId()));
     }
 
     @Test
@@ -237,13 +426,18 @@ public class UserControllerIntegrationTest {
                         .param("carId", testCar.getId().toString()))
                 .andExpect(status().isOk());
 
-        assertEquals(1, user.getCars().size());
-        assertTrue(user.getCars().contains(testCar));
+        // The purchase is applied with set-based updates, so re-read the user instead of inspecting the stale entity
+        AppUser userAfter = userRepository.findById(testUser.getId()).orElseThrow(() -> new NotFoundException("user not found"));
+        assertEquals(1, userAfter.getCars().size());
+        assertTrue(userAfter.getCars().stream().anyMatch(car -> car.getId().equals(testCar.getId())));
 
-        assertEquals(initialBalanceInCents - testCar.getPriceInCents(), user.getBalanceInCents());
+        assertEquals(initialBalanceInCents - testCar.getPriceInCents(), balanceService.getBalance(userAfter.getId()));
+        assertEquals(1, userAfter.getOwnedCarsCount());
 
-        Car carAfter = carRepository.findById(testCar.getId()).orElseThrow(() -> new NotFoundException("car not found"));
-        assertEquals(1L, carAfter.getSalesCount());
+        // The sale is counted in memory until the next flush, reads merge it in
+        mockMvc.perform(get("/cars/{id}", testCar.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.salesCount", is(1)));
     }
 
     @Test
@@ -258,7 +452,7 @@ public class UserControllerIntegrationTest {
         AppUser userAfter = userRepository.findById(testUser.getId()).orElseThrow(() -> new NotFoundException("user not found"));
         assertEquals(0, userAfter.getCars().size());
 
-        assertEquals(testUser.getBalanceInCents(), userAfter.getBalanceInCents());
+        assertEquals(testUser.getBalanceInCents(), balanceService.getBalance(userAfter.getId()));
 
         Car carAfter = carRepository.findById(expensiveCar.getId()).orElseThrow(() -> new NotFoundException("car not found"));
         assertEquals(0L, carAfter.getSalesCount());
@@ -275,18 +469,19 @@ public class UserControllerIntegrationTest {
 
         AppUser userAfter = userRepository.findById(testUser.getId()).orElseThrow(() -> new NotFoundException("user not found"));
         assertEquals(0, userAfter.getCars().size());
-        assertEquals(testUser.getBalanceInCents(), userAfter.getBalanceInCents());
+        assertEquals(testUser.getBalanceInCents(), balanceService.getBalance(userAfter.getId()));
     }
 
     @Test
     @WithMockUser(username = "testuser", roles = "USER")
     void testSellCar() throws Exception {
         testUser.getCars().add(testCar);
+        testUser.setOwnedCarsCount(1);
         userRepository.saveAndFlush(testUser);
 
         AppUser userBefore = userRepository.findById(testUser.getId()).orElseThrow(() -> new NotFoundException("user not found"));
         assertEquals(1, userBefore.getCars().size());
-        long initialBalance = userBefore.getBalanceInCents();
+        long initialBalance = balanceService.getBalance(userBefore.getId());
 
         long expectedAmount = Math.round(testCar.getPriceInCents() * 0.8);
 
@@ -298,7 +493,8 @@ public class UserControllerIntegrationTest {
         AppUser userAfter = userRepository.findById(testUser.getId()).orElseThrow(() -> new NotFoundException("user not found"));
         assertEquals(0, userAfter.getCars().size());
 
-        assertEquals(initialBalance + expectedAmount, userAfter.getBalanceInCents());
+        assertEquals(initialBalance + expectedAmount, balanceService.getBalance(userAfter.getId()));
+        assertEquals(0, userAfter.getOwnedCarsCount());
     }
 
     @Test
@@ -333,4 +529,34 @@ public class UserControllerIntegrationTest {
         mockMvc.perform(get("/users/myCars"))
                 .andExpect(status().isUnauthorized());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testRefreshTokenIsRotated() throws Exception {
+        testUser.setPassword(passwordEncoder.encode("password123"));
+        userRepository.saveAndFlush(testUser);
+
+        JsonNode login = objectMapper.readTree(mockMvc.perform(post("/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new LoginRequest("testuser", "password123"))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        String refreshToken = login.get("refreshToken").asText();
+
+        JsonNode refreshed = objectMapper.readTree(mockMvc.perform(post("/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new RefreshRequest(refreshToken))))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        assertNotEquals(refreshToken, refreshed.get("refreshToken").asText());
+
+        mockMvc.perform(get("/users/myCars")
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + refreshed.get("accessToken").asText()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(post("/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(new RefreshRequest(refreshToken))))
+                .andExpect(status().isUnauthorized())
+                .andExpect(jsonPath("$.errorMessage", containsString("Invalid refresh token")));
+    }
+}
@@ -0,0 +1,101 @@
+package cars.unit;
+
+import com.example.cars.user.persistence.AppUser;
+import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntry;
+import com.example.cars.user.persistence.BalanceEntryReason;
+import com.example.cars.user.persistence.BalanceEntryRepository;
+import com.example.cars.user.service.BalanceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class BalanceServiceTest {
+
+    @Mock
+    private AppUserRepository appUserRepository;
+
+    @Mock
+    private BalanceEntryRepository balanceEntryRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private BalanceService balanceService;
+
+    @BeforeEach
+    void setUp() {
+        balanceService = new BalanceService(appUserRepository, balanceEntryRepository, transactionTemplate, 10);
+    }
+
+    @Test
+    void testCreditOnlyAppendsEntry() {
+        balanceService.credit(1L, 500L, BalanceEntryReason.TOP_UP, null);
+
+        ArgumentCaptor<BalanceEntry> entry = ArgumentCaptor.forClass(BalanceEntry.class);
+        verify(balanceEntryRepository).save(entry.capture());
+        assertEquals(500L, entry.getValue().getAmountInCents());
+        assertEquals(BalanceEntryReason.TOP_UP, entry.getValue().getReason());
+        verifyNoInteractions(appUserRepository);
+    }
+
+    @Test
+    void testDebitAppendsNegativeEntryUnderLock() {
+        when(appUserRepository.lockById(1L)).thenReturn(Optional.of(new AppUser()));
+        when(appUserRepository.findBalanceInCents(1L)).thenReturn(Optional.of(1000L));
+
+        assertTrue(balanceService.tryDebit(1L, 1000L, BalanceEntryReason.PURCHASE, 7L));
+
+        ArgumentCaptor<BalanceEntry> entry = ArgumentCaptor.forClass(BalanceEntry.class);
+        verify(balanceEntryRepository).save(entry.capture());
+        assertEquals(-1000L, entry.getValue().getAmountInCents());
+        assertEquals(7L, entry.getValue().getCarId());
+    }
+
+    @Test
+    void testDebitRejectedWhenBalanceTooLow() {
+        when(appUserRepository.lockById(1L)).thenReturn(Optional.of(new AppUser()));
+        when(appUserRepository.findBalanceInCents(1L)).thenReturn(Optional.of(999L));
+
+        assertFalse(balanceService.tryDebit(1L, 1000L, BalanceEntryReason.PURCHASE, 7L));
+
+        verify(balanceEntryRepository, never()).save(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCompactFoldsReadEntriesIntoSnapshot() {
+        doAnswer(invocation -> {
+            ((Consumer<Object>) invocation.getArgument(0)).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(balanceEntryRepository.findUsersWithUncompactedEntries(any(Pageable.class))).thenReturn(List.of(1L));
+        when(balanceEntryRepository.findUncompactedEntries(1L)).thenReturn(List.of(entry(11L, 500L), entry(12L, -200L)));
+
+        balanceService.compact();
+
+        verify(appUserRepository).lockById(1L);
+        verify(appUserRepository).addToBalanceSnapshot(1L, 300L);
+        verify(balanceEntryRepository).markCompacted(List.of(11L, 12L));
+    }
+
+    private static BalanceEntry entry(Long id, long amountInCents) {
+        BalanceEntry entry = new BalanceEntry(1L, amountInCents, BalanceEntryReason.TOP_UP, null);
+        entry.setId(id);
+        return entry;
+    }
+}
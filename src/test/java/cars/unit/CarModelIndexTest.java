@@ -0,0 +1,95 @@
+package cars.unit;
+
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.services.CarModelIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+public class CarModelIndexTest {
+
+    @Mock
+    private CarRepository carRepository;
+
+    @InjectMocks
+    private CarModelIndex carModelIndex;
+
+    @BeforeEach
+    void setUp() {
+        carModelIndex.index(buildCar(1L, "BMW X5", 10L));
+        carModelIndex.index(buildCar(2L, "BMW M3 Competition", 50L));
+        carModelIndex.index(buildCar(3L, "Toyota Camry", 30L));
+        carModelIndex.index(buildCar(4L, "Camaro", 5L));
+    }
+
+    @Test
+    void testSearchRanksPrefixMatchesFirst() {
+        // When
+        List<CarDTO> result = carModelIndex.search("cam", 10);
+
+        // Then
+        assertEquals(List.of(4L, 3L), result.stream().map(CarDTO::getId).toList());
+        verifyNoInteractions(carRepository);
+    }
+
+    @Test
+    void testSearchWithShortQueryUsesWordPrefixes() {
+        // When
+        List<CarDTO> result = carModelIndex.search("M", 10);
+
+        // Then
+        assertEquals(List.of(2L), result.stream().map(CarDTO::getId).toList());
+    }
+
+    @Test
+    void testSearchRespectsLimitAndSalesCount() {
+        // When
+        List<CarDTO> result = carModelIndex.search("bmw", 1);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals(2L, result.getFirst().getId());
+    }
+
+    @Test
+    void testReindexAndRemove() {
+        // When
+        carModelIndex.index(buildCar(1L, "Audi Q7", 10L));
+        carModelIndex.remove(3L);
+
+        // Then
+        assertEquals(List.of(2L), carModelIndex.search("bmw", 10).stream().map(CarDTO::getId).toList());
+        assertEquals(List.of(1L), carModelIndex.search("q7", 10).stream().map(CarDTO::getId).toList());
+        assertTrue(carModelIndex.search("camry", 10).isEmpty());
+    }
+
+    @Test
+    void testUpdateEngineReplacesEmbeddedEngine() {
+        // Given
+        EngineDTO updated = new EngineDTO(1L, 250, 2.5, 1L);
+
+        // When
+        carModelIndex.updateEngine(updated);
+
+        // Then
+        List<CarDTO> result = carModelIndex.search("bmw", 10);
+        assertEquals(2, result.size());
+        assertTrue(result.stream().allMatch(car -> car.getEngine().equals(updated)));
+    }
+
+    private CarDTO buildCar(Long id, String model, Long salesCount) {
+        return new CarDTO(id, model, 2020, true, 10000L, new EngineDTO(1L, 200, 2.0, 0L), null, salesCount, 0L);
+    }
+}
@@ -1,15 +1,26 @@
 package cars.unit;
 
 import com.example.cars.error.NotFoundException;
+import com.example.cars.error.ServiceBusyException;
+import com.example.cars.images.service.ImageUploadService;
 import com.example.cars.images.service.StorageService;
+import com.example.cars.model.CarCursor;
 import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.CursorPage;
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.PaginationMode;
+import com.example.cars.model.requests.CarFilter;
 import com.example.cars.model.requests.CarRequest;
 import com.example.cars.persistence.Car;
 import com.example.cars.persistence.CarRepository;
 import com.example.cars.persistence.Engine;
+import com.example.cars.services.CarCache;
+import com.example.cars.services.CarModelIndex;
 import com.example.cars.services.CarsService;
 import com.example.cars.services.EngineService;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.services.SalesLeaderboard;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,18 +28,30 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -43,6 +66,21 @@ public class CarsServiceUnitTest {
     @Mock
     private StorageService storageService;
 
+    @Mock
+    private ImageUploadService imageUploadService;
+
+    @Mock
+    private CarModelIndex carModelIndex;
+
+    @Mock
+    private SalesLeaderboard salesLeaderboard;
+
+    @Spy
+    private CarCache carCache = new CarCache(100, Duration.ofMinutes(5));
+
+    @Spy
+    private SalesCounter salesCounter = new SalesCounter(null, null, carCache, null);
+
     @InjectMocks
     private CarsService carsService;
 
@@ -77,9 +115,9 @@ public class CarsServiceUnitTest {
         validCarRequest = new CarRequest("New Car", 2022, true, 10000L, 1L);
 
         // Create CarDTO
-        EngineDTO engineDTO = new EngineDTO(testEngine.getId(), testEngine.getHorsePower(), testEngine.getCapacity());
+        EngineDTO engineDTO = new EngineDTO(testEngine.getId(), testEngine.getHorsePower(), testEngine.getCapacity(), 0L);
         carDTO = new CarDTO(testCar.getId(), testCar.getModel(), testCar.getYear(), testCar.isDriveable(),
-                testCar.getPriceInCents(), engineDTO, testCar.getImageUrl(), testCar.getSalesCount());
+                testCar.getPriceInCents(), engineDTO, testCar.getImageUrl(), testCar.getSalesCount(), 0L);
     }
 
     @Test
@@ -89,7 +127,7 @@ public class CarsServiceUnitTest {
         when(carRepository.findCars(any(Pageable.class))).thenReturn(expectedPage);
 
         // When
-        Page<CarDTO> result = carsService.getCars(0, 10);
+        Slice<CarDTO> result = carsService.getCars(0, 10, new CarFilter(), CarSortField.ID, Sort.Direction.ASC, PaginationMode.PAGE);
 
         // Then
         assertNotNull(result);
@@ -100,6 +138,72 @@ public class CarsServiceUnitTest {
         verify(carRepository).findCars(any(Pageable.class));
     }
 
+    @Test
+    void testGetCarsWithFilter() {
+        // Given
+        CarFilter filter = new CarFilter();
+        filter.setMinYear(2020);
+        filter.setMinHorsePower(250);
+        Page<CarDTO> expectedPage = new PageImpl<>(List.of(carDTO));
+        when(carRepository.searchCars(eq(filter), any(Pageable.class))).thenReturn(expectedPage);
+
+        // When
+        Slice<CarDTO> result = carsService.getCars(0, 10, filter, CarSortField.PRICE_IN_CENTS, Sort.Direction.DESC, PaginationMode.PAGE);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+        verify(carRepository).searchCars(eq(filter), argThat(pageable ->
+                pageable.getSort().equals(Sort.by(Sort.Direction.DESC, "priceInCents", "id"))));
+        verify(carRepository, never()).findCars(any(Pageable.class));
+    }
+
+    @Test
+    void testGetCarsAsSlice() {
+        // Given
+        Slice<CarDTO> expectedSlice = new SliceImpl<>(List.of(carDTO), PageRequest.of(0, 1), true);
+        when(carRepository.findCarSlice(any(Pageable.class))).thenReturn(expectedSlice);
+
+        // When
+        Slice<CarDTO> result = carsService.getCars(0, 1, null, CarSortField.ID, Sort.Direction.ASC, PaginationMode.SLICE);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+        assertTrue(result.hasNext());
+        verify(carRepository).findCarSlice(any(Pageable.class));
+        verify(carRepository, never()).findCars(any(Pageable.class));
+    }
+
+    @Test
+    void testScrollCars() {
+        // Given
+        CarDTO secondCar = new CarDTO(2L, "SecondModel", 2024, true, 9000L, carDTO.getEngine(), null, 0L, 0L);
+        when(carRepository.findCarsAfter(null, CarSortField.PRICE_IN_CENTS, Sort.Direction.ASC, null, 2))
+                .thenReturn(List.of(carDTO, secondCar));
+
+        // When
+        CursorPage<CarDTO> result = carsService.scrollCars(null, CarSortField.PRICE_IN_CENTS, Sort.Direction.ASC, null, 1);
+
+        // Then
+        assertEquals(1, result.getContent().size());
+        assertTrue(result.isHasNext());
+
+        CarCursor nextCursor = CarCursor.decode(result.getNextCursor());
+        assertEquals(CarSortField.PRICE_IN_CENTS, nextCursor.getSortField());
+        assertEquals(carDTO.getPriceInCents(), nextCursor.getLastValue());
+        assertEquals(carDTO.getId(), nextCursor.getLastId());
+    }
+
+    @Test
+    void testScrollCarsWithMismatchedCursor() {
+        // Given
+        String cursor = new CarCursor(CarSortField.ID, Sort.Direction.ASC, 1L, 1L).encode();
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class,
+                () -> carsService.scrollCars(null, CarSortField.SALES_COUNT, Sort.Direction.DESC, cursor, 10));
+        verify(carRepository, never()).findCarsAfter(any(), any(), any(), any(), anyInt());
+    }
+
     @Test
     void testFindCar() {
         // Given
@@ -121,6 +225,54 @@ public class CarsServiceUnitTest {
         verify(carRepository).findById(testCar.getId());
     }
 
+    @Test
+    void testFindCarIsServedFromCache() {
+        // Given
+        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
+
+        // When
+        carsService.findCar(testCar.getId());
+        CarDTO result = carsService.findCar(testCar.getId());
+
+        // Then
+        assertEquals(testCar.getModel(), result.getModel());
+        assertEquals(1, carsService.getCacheStats().getHitCount());
+        assertEquals(1, carsService.getCacheStats().getMissCount());
+        verify(carRepository, times(1)).findById(testCar.getId());
+    }
+
+    @Test
+    void testFindCarMergesUnflushedSales() {
+        // Given
+        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
+        carsService.findCar(testCar.getId());
+
+        // When
+        salesCounter.increment(testCar.getId());
+        salesCounter.increment(testCar.getId());
+        CarDTO result = carsService.findCar(testCar.getId());
+
+        // Then the cached row is reused and the pending delta is added on top
+        assertEquals(testCar.getSalesCount() + 2, result.getSalesCount());
+        verify(carRepository, times(1)).findById(testCar.getId());
+    }
+
+    @Test
+    void testUpdateCarPriceInvalidatesCache() {
+        // Given
+        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
+        when(carRepository.save(any(Car.class))).thenReturn(testCar);
+        carsService.findCar(testCar.getId());
+
+        // When
+        carsService.updateCarPriceInCents(testCar.getId(), 12000L);
+        CarDTO result = carsService.findCar(testCar.getId());
+
+        // Then
+        assertEquals(12000L, result.getPriceInCents());
+        verify(carCache).invalidate(testCar.getId());
+    }
+
     @Test
     void testFindCarNotFound() {
         // Given
@@ -162,6 +314,7 @@ public class CarsServiceUnitTest {
 
         verify(engineService).findEngineById(validCarRequest.getEngineId());
         verify(carRepository).save(any(Car.class));
+        verify(carModelIndex).index(result);
     }
 
     @Test
@@ -241,6 +394,43 @@ public class CarsServiceUnitTest {
         verify(carRepository).save(testCar);
     }
 
+    @Test
+    void testUpdateCarImageAsync() {
+        // Given
+        MultipartFile mockImage = new MockMultipartFile("image", "new-image.jpg", "image/jpeg", "test image data".getBytes());
+        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
+        when(storageService.prepareImageKey(mockImage)).thenReturn("images/new-image.jpg");
+
+        // When
+        ResponseEntity<CarDTO> response = carsService.updateCarImageAsync(testCar.getId(), mockImage);
+
+        // Then
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("/cars/1/imageUpload", response.getHeaders().getLocation().toString());
+        assertEquals(testCar.getImageUrl(), response.getBody().getImageUrl());
+
+        verify(imageUploadService).submit(testCar.getId(), "images/new-image.jpg", mockImage);
+        verify(storageService, never()).uploadImage(any());
+        verify(carRepository, never()).save(any(Car.class));
+    }
+
+    @Test
+    void testAddCarWithImageAsyncRejectedBeforeSavingWhenUploadsAreBusy() {
+        // Given
+        MultipartFile mockImage = new MockMultipartFile("image", "new-image.jpg", "image/jpeg", "test image data".getBytes());
+        String carRequestJson = "{\"model\":\"New Car\",\"year\":2022,\"driveable\":true,\"priceInCents\":10000,\"engineId\":1}";
+        when(engineService.findEngineById(1L)).thenReturn(testEngine);
+        when(storageService.prepareImageKey(mockImage)).thenReturn("images/new-image.jpg");
+        doThrow(new ServiceBusyException("Too many image uploads in progress, please retry"))
+                .when(imageUploadService).ensureCapacity();
+
+        // When & Then
+        assertThrows(ServiceBusyException.class, () -> carsService.addCarWithImage(carRequestJson, mockImage, true));
+
+        verify(carRepository, never()).save(any(Car.class));
+        verify(imageUploadService, never()).submit(any(), any(), any());
+    }
+
     @Test
     void testUpdateCarPriceInCents() {
         // Given
@@ -287,5 +477,7 @@ public class CarsServiceUnitTest {
 
         // Then
         verify(carRepository).deleteById(testCar.getId());
+        verify(carModelIndex).remove(testCar.getId());
+        verify(salesLeaderboard).remove(testCar.getId());
     }
 }
\ No newline at end of file
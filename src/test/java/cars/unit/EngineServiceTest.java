@@ -1,9 +1,12 @@
 package cars.unit;
 
 import com.example.cars.model.EngineDTO;
+import com.example.cars.model.PaginationMode;
 import com.example.cars.model.requests.EngineRequest;
 import com.example.cars.persistence.Engine;
 import com.example.cars.persistence.EngineRepository;
+import com.example.cars.services.CarCache;
+import com.example.cars.services.CarModelIndex;
 import com.example.cars.services.EngineService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,6 +16,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
 
 import java.util.List;
 import java.util.Optional;
@@ -20,6 +24,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -29,6 +34,12 @@ public class EngineServiceTest {
     @Mock
     private EngineRepository engineRepository;
 
+    @Mock
+    private CarCache carCache;
+
+    @Mock
+    private CarModelIndex carModelIndex;
+
     @InjectMocks
     private EngineService engineService;
 
@@ -37,11 +48,11 @@ public class EngineServiceTest {
         // Given
         PageRequest pageRequest = PageRequest.of(0, 10);
 
-        Page<EngineDTO> enginePage = new PageImpl<EngineDTO>(List.of(new EngineDTO(1L, 150, 2.0)));
+        Page<EngineDTO> enginePage = new PageImpl<EngineDTO>(List.of(new EngineDTO(1L, 150, 2.0, 0L)));
         when(engineRepository.findEngines(2.0, pageRequest)).thenReturn(enginePage);
 
         // when
-        Page<EngineDTO> result = engineService.getEngines(0, 10, 2.0);
+        Slice<EngineDTO> result = engineService.getEngines(0, 10, 2.0, PaginationMode.PAGE);
 
         // Then
         assertEquals(1, result.getContent().size());
@@ -77,6 +88,8 @@ public class EngineServiceTest {
         assertEquals(200, result.getHorsePower());
         verify(engineRepository).findById(1L);
         verify(engineRepository).save(any(Engine.class));
+        verify(carCache).invalidateAll();
+        verify(carModelIndex).updateEngine(result);
     }
 
     @Test
@@ -100,6 +113,21 @@ public class EngineServiceTest {
         verify(engineRepository).findById(1L);
     }
 
+    @Test
+    void testFindEngineFromSnapshot() {
+        // Given
+        when(engineRepository.findAll()).thenReturn(List.of(buildEngine()));
+        engineService.refreshSnapshot();
+
+        // When
+        Engine result = engineService.findEngineById(1L);
+
+        // Then
+        assertEquals(1L, result.getId());
+        assertEquals(180, result.getHorsePower());
+        verify(engineRepository, never()).findById(any());
+    }
+
     private Engine buildEngine() {
         Engine engine = new Engine();
         engine.setId(1L);
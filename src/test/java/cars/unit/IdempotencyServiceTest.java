@@ -0,0 +1,157 @@
+package cars.unit;
+
+import com.example.cars.error.IdempotencyKeyReusedException;
+import com.example.cars.error.InsufficientFundsException;
+import com.example.cars.idempotency.IdempotencyKey;
+import com.example.cars.idempotency.IdempotencyKeyRepository;
+import com.example.cars.idempotency.IdempotencyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyService = new IdempotencyService(idempotencyKeyRepository, transactionTemplate, 100, Duration.ofHours(1), false);
+    }
+
+    @Test
+    void testReplayDoesNotRunActionAgain() {
+        AtomicInteger runs = new AtomicInteger();
+
+        idempotencyService.run("key-1", "sell:1", runs::incrementAndGet);
+        idempotencyService.run("key-1", "sell:1", runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+        verifyNoInteractions(idempotencyKeyRepository, transactionTemplate);
+    }
+
+    @Test
+    void testRequestsWithoutKeyAlwaysRun() {
+        AtomicInteger runs = new AtomicInteger();
+
+        idempotencyService.run(null, "sell:1", runs::incrementAndGet);
+        idempotencyService.run(null, "sell:1", runs::incrementAndGet);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testKeyReusedForDifferentRequest() {
+        idempotencyService.run("key-2", "sell:1", () -> { });
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> idempotencyService.run("key-2", "sell:2", () -> { }));
+    }
+
+    @Test
+    void testFailedAttemptReleasesKey() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(InsufficientFundsException.class, () -> idempotencyService.run("key-3", "purchase:1", () -> {
+            runs.incrementAndGet();
+            throw new InsufficientFundsException("Insufficient funds");
+        }));
+        idempotencyService.run("key-3", "purchase:1", runs::incrementAndGet);
+
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    void testReplayWaitsForRunningAttempt() {
+        CompletableFuture<Void> pending = new CompletableFuture<>();
+        AtomicInteger runs = new AtomicInteger();
+
+        idempotencyService.execute("key-4", "purchase:1", () -> {
+            runs.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<Void> replay = idempotencyService.execute("key-4", "purchase:1", () -> {
+            runs.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertFalse(replay.isDone());
+        pending.complete(null);
+        assertTrue(replay.isDone());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testPersistentKeyIsInsertedWithTheMutation() {
+        IdempotencyService persistentService = persistentService();
+        AtomicInteger runs = new AtomicInteger();
+
+        persistentService.run("key-5", "sell:1", runs::incrementAndGet);
+
+        ArgumentCaptor<IdempotencyKey> saved = ArgumentCaptor.forClass(IdempotencyKey.class);
+        verify(idempotencyKeyRepository).saveAndFlush(saved.capture());
+        assertEquals("anonymous:key-5", saved.getValue().getId());
+        assertEquals("sell:1", saved.getValue().getFingerprint());
+        // Inserted with persist, so a concurrent duplicate fails instead of being merged over
+        assertTrue(saved.getValue().isNew());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testConcurrentPersistentDuplicateIsReplayed() {
+        IdempotencyService persistentService = persistentService();
+        when(idempotencyKeyRepository.findById("anonymous:key-6"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new IdempotencyKey("anonymous:key-6", "sell:1", Instant.now())));
+        when(idempotencyKeyRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+        AtomicInteger runs = new AtomicInteger();
+
+        assertDoesNotThrow(() -> persistentService.run("key-6", "sell:1", runs::incrementAndGet));
+        persistentService.run("key-6", "sell:1", runs::incrementAndGet);
+
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testConcurrentPersistentDuplicateForDifferentRequest() {
+        IdempotencyService persistentService = persistentService();
+        when(idempotencyKeyRepository.findById("anonymous:key-7"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(new IdempotencyKey("anonymous:key-7", "sell:2", Instant.now())));
+        when(idempotencyKeyRepository.saveAndFlush(any()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        assertThrows(IdempotencyKeyReusedException.class, () -> persistentService.run("key-7", "sell:1", () -> { }));
+    }
+
+    @SuppressWarnings("unchecked")
+    private IdempotencyService persistentService() {
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(invocation -> ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        return new IdempotencyService(idempotencyKeyRepository, transactionTemplate, 100, Duration.ofHours(1), true);
+    }
+}
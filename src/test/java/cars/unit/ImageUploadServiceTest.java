@@ -0,0 +1,169 @@
+package cars.unit;
+
+import com.example.cars.error.NotFoundException;
+import com.example.cars.error.ServiceBusyException;
+import com.example.cars.images.model.ImageUploadState;
+import com.example.cars.images.model.ImageUploadStatusDTO;
+import com.example.cars.images.service.ImageUploadService;
+import com.example.cars.images.service.StorageService;
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.services.CarCache;
+import com.example.cars.services.CarModelIndex;
+import com.example.cars.services.SalesLeaderboard;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ImageUploadServiceTest {
+    private static final String KEY = "images/car.jpg";
+    private static final String URL = "https://bucket.s3.region.amazonaws.com/images/car.jpg";
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private CarRepository carRepository;
+
+    @Mock
+    private CarCache carCache;
+
+    @Mock
+    private CarModelIndex carModelIndex;
+
+    @Mock
+    private SalesLeaderboard salesLeaderboard;
+
+    private ImageUploadService imageUploadService;
+
+    private final MockMultipartFile image = new MockMultipartFile("image", "car.jpg", "image/jpeg", "image".getBytes());
+
+    @BeforeEach
+    void setUp() {
+        imageUploadService = new ImageUploadService(storageService, carRepository, carCache, carModelIndex, salesLeaderboard,
+                1, 10, 2, Duration.ofMillis(10), Duration.ofHours(1));
+        lenient().when(storageService.generatePublicUrl(KEY)).thenReturn(URL);
+        lenient().when(carRepository.findCarsByIds(any())).thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        imageUploadService.stop();
+    }
+
+    @Test
+    void testUploadPatchesCarAndDeletesOldImage() throws InterruptedException {
+        CarDTO refreshed = new CarDTO(1L, "Model", 2020, true, 10000L, new EngineDTO(1L, 200, 2.0, 0L), URL, 0L, 1L);
+        when(carRepository.findImageUrl(1L)).thenReturn(Optional.of("old-url"));
+        when(carRepository.updateImageUrl(1L, URL)).thenReturn(1);
+        when(carRepository.findCarsByIds(List.of(1L))).thenReturn(List.of(refreshed));
+
+        imageUploadService.submit(1L, KEY, image);
+        ImageUploadStatusDTO status = awaitState(1L, ImageUploadState.COMPLETED);
+
+        assertEquals(URL, status.getImageUrl());
+        assertEquals(1, status.getAttempts());
+        verify(storageService).uploadWithVariants(any(), eq(5L), eq("image/jpeg"), eq(KEY));
+        verify(storageService).deleteImage("old-url");
+        verify(carCache).invalidate(1L);
+        verify(carModelIndex).index(refreshed);
+        verify(salesLeaderboard).update(refreshed);
+    }
+
+    @Test
+    void testFullQueueIsReportedBeforeSubmitting() throws InterruptedException {
+        imageUploadService.stop();
+        imageUploadService = new ImageUploadService(storageService, carRepository, carCache, carModelIndex, salesLeaderboard,
+                1, 1, 2, Duration.ofMillis(10), Duration.ofHours(1));
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(storageService).uploadWithVariants(any(), anyLong(), anyString(), anyString());
+
+        imageUploadService.submit(1L, KEY, image);
+        awaitState(1L, ImageUploadState.UPLOADING);
+        imageUploadService.ensureCapacity();
+        imageUploadService.submit(2L, KEY, image);
+
+        try {
+            assertThrows(ServiceBusyException.class, () -> imageUploadService.ensureCapacity());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void testFailedUploadIsRetriedAndCanBeRetriedManually() throws InterruptedException {
+        doThrow(new RuntimeException("S3 unavailable"))
+                .when(storageService).uploadWithVariants(any(), anyLong(), anyString(), anyString());
+
+        imageUploadService.submit(1L, KEY, image);
+        ImageUploadStatusDTO failed = awaitState(1L, ImageUploadState.FAILED);
+
+        assertEquals(2, failed.getAttempts());
+        assertEquals("S3 unavailable", failed.getError());
+        verify(carRepository, never()).updateImageUrl(anyLong(), anyString());
+
+        doNothing().when(storageService).uploadWithVariants(any(), anyLong(), anyString(), anyString());
+        when(carRepository.updateImageUrl(1L, URL)).thenReturn(1);
+
+        imageUploadService.retry(1L);
+        awaitState(1L, ImageUploadState.COMPLETED);
+
+        verify(storageService, times(3)).uploadWithVariants(any(), anyLong(), anyString(), anyString());
+    }
+
+    @Test
+    void testUploadForDeletedCarRemovesUploadedImage() throws InterruptedException {
+        when(carRepository.updateImageUrl(1L, URL)).thenReturn(0);
+
+        imageUploadService.submit(1L, KEY, image);
+        awaitState(1L, ImageUploadState.FAILED);
+
+        verify(storageService).deleteImage(URL);
+    }
+
+    @Test
+    void testUnknownUpload() {
+        assertThrows(NotFoundException.class, () -> imageUploadService.getStatus(42L));
+        assertThrows(NotFoundException.class, () -> imageUploadService.retry(42L));
+    }
+
+    private ImageUploadStatusDTO awaitState(Long carId, ImageUploadState state) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        ImageUploadStatusDTO status = imageUploadService.getStatus(carId);
+        while (status.getState() != state && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = imageUploadService.getStatus(carId);
+        }
+        assertEquals(state, status.getState());
+        return status;
+    }
+}
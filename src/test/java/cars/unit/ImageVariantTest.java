@@ -0,0 +1,31 @@
+package cars.unit;
+
+import com.example.cars.images.model.ImageVariant;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImageVariantTest {
+
+    @Test
+    void testLocateVariantsNextToOriginal() {
+        String prefix = "https://bucket.s3.eu-central-1.amazonaws.com/images/123e4567-e89b-12d3-a456-426614174000/";
+
+        Map<String, String> variants = ImageVariant.locate(prefix + "original.png");
+
+        assertEquals(List.of("thumbnail", "card", "full"), List.copyOf(variants.keySet()));
+        assertEquals(prefix + "thumbnail", variants.get("thumbnail"));
+        assertEquals(prefix + "full", variants.get("full"));
+    }
+
+    @Test
+    void testLegacyImagesHaveNoVariants() {
+        assertTrue(ImageVariant.locate(null).isEmpty());
+        assertTrue(ImageVariant.locate("https://bucket.s3.amazonaws.com/images/123e4567-e89b-12d3-a456-426614174000_car.png")
+                .isEmpty());
+    }
+}
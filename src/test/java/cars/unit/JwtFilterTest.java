@@ -0,0 +1,88 @@
+package cars.unit;
+
+import com.example.cars.security.JwtFilter;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.MACSigner;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class JwtFilterTest {
+    private static final String SECRET = "test-jwt-key-for-integration-tests-very-secret-and-secure-key";
+
+    private final JwtFilter jwtFilter = new JwtFilter(SECRET, 100);
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void testValidTokenAuthenticatesAndIsReused() throws Exception {
+        String token = sign(SECRET, "user", List.of("USER"), 60_000);
+
+        Authentication first = authenticate(token);
+        Authentication second = authenticate(token);
+
+        assertNotNull(first);
+        assertEquals("user", first.getPrincipal());
+        assertEquals("ROLE_USER", first.getAuthorities().iterator().next().getAuthority());
+        assertSame(first.getAuthorities(), second.getAuthorities());
+    }
+
+    @Test
+    void testTokensWithSameRolesShareAuthorities() throws Exception {
+        Authentication first = authenticate(sign(SECRET, "first", List.of("USER", "ADMIN"), 60_000));
+        Authentication second = authenticate(sign(SECRET, "second", List.of("ADMIN", "USER"), 60_000));
+
+        assertEquals("second", second.getPrincipal());
+        assertSame(first.getAuthorities(), second.getAuthorities());
+    }
+
+    @Test
+    void testInvalidSignatureIsRejected() throws Exception {
+        String token = sign("another-jwt-key-that-is-long-enough-for-hmac-sha256", "user", List.of("USER"), 60_000);
+
+        assertNull(authenticate(token));
+        assertNull(authenticate(token));
+    }
+
+    @Test
+    void testExpiredTokenIsRejected() throws Exception {
+        assertNull(authenticate(sign(SECRET, "user", List.of("USER"), -1_000)));
+    }
+
+    private Authentication authenticate(String token) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + token);
+        jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private static String sign(String secret, String username, List<String> roles, long validForMillis) throws Exception {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+                .subject(username)
+                .claim("roles", roles)
+                .expirationTime(new Date(System.currentTimeMillis() + validForMillis))
+                .build();
+        SignedJWT signedJWT = new SignedJWT(new JWSHeader(JWSAlgorithm.HS256), claims);
+        signedJWT.sign(new MACSigner(secret.getBytes()));
+        return signedJWT.serialize();
+    }
+}
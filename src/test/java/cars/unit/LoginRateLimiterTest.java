@@ -0,0 +1,76 @@
+package cars.unit;
+
+import com.example.cars.auth.LoginRateLimiter;
+import com.example.cars.error.TooManyRequestsException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoginRateLimiterTest {
+
+    private final LoginRateLimiter limiter =
+            new LoginRateLimiter(3, Duration.ofMinutes(1), 5, Duration.ofMinutes(1), 100);
+
+    @Test
+    void testUsernameBucketAllowsBurstThenRejects() {
+        for (int i = 0; i < 3; i++) {
+            assertDoesNotThrow(() -> limiter.acquire("user", "10.0.0.1"));
+        }
+
+        TooManyRequestsException exception =
+                assertThrows(TooManyRequestsException.class, () -> limiter.acquire("user", "10.0.0.2"));
+        assertTrue(exception.getRetryAfterSeconds() > 0);
+    }
+
+    @Test
+    void testRetryAfterIsRoundedUp() {
+        LoginRateLimiter slowLimiter = new LoginRateLimiter(1, Duration.ofMillis(1500), 5, Duration.ofMinutes(1), 100);
+        slowLimiter.acquire("user", "10.0.0.1");
+
+        TooManyRequestsException exception =
+                assertThrows(TooManyRequestsException.class, () -> slowLimiter.acquire("user", "10.0.0.1"));
+        assertEquals(2, exception.getRetryAfterSeconds());
+    }
+
+    @Test
+    void testClientBucketIsSharedAcrossUsernames() {
+        for (int i = 0; i < 5; i++) {
+            String username = "user" + i;
+            assertDoesNotThrow(() -> limiter.acquire(username, "10.0.0.1"));
+        }
+
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire("another", "10.0.0.1"));
+        assertDoesNotThrow(() -> limiter.acquire("another", "10.0.0.2"));
+    }
+
+    @Test
+    void testUsernameRejectionDoesNotSpendClientAttempt() {
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire("user", "10.0.0.1");
+        }
+        for (int i = 0; i < 5; i++) {
+            assertThrows(TooManyRequestsException.class, () -> limiter.acquire("user", "10.0.0.1"));
+        }
+
+        // Three of the five client attempts were used by the accepted logins, the rejected ones took none
+        assertDoesNotThrow(() -> limiter.acquire("another", "10.0.0.1"));
+        assertDoesNotThrow(() -> limiter.acquire("third", "10.0.0.1"));
+        assertThrows(TooManyRequestsException.class, () -> limiter.acquire("fourth", "10.0.0.1"));
+    }
+
+    @Test
+    void testBucketRefills() throws InterruptedException {
+        LoginRateLimiter fastLimiter = new LoginRateLimiter(1, Duration.ofMillis(50), 10, Duration.ofMillis(50), 100);
+        fastLimiter.acquire("user", "10.0.0.1");
+        assertThrows(TooManyRequestsException.class, () -> fastLimiter.acquire("user", "10.0.0.1"));
+
+        Thread.sleep(100);
+
+        assertDoesNotThrow(() -> fastLimiter.acquire("user", "10.0.0.1"));
+    }
+}
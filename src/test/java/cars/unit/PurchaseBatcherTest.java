@@ -0,0 +1,114 @@
+package cars.unit;
+
+import com.example.cars.error.InsufficientFundsException;
+import com.example.cars.error.ServiceBusyException;
+import com.example.cars.user.service.PurchaseBatcher;
+import com.example.cars.user.service.UserService;
+import com.example.cars.user.utils.UserUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class PurchaseBatcherTest {
+
+    @Mock
+    private UserService userService;
+
+    @Mock
+    private UserUtils userUtils;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private PurchaseBatcher purchaseBatcher;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (purchaseBatcher != null) {
+            purchaseBatcher.stop();
+        }
+    }
+
+    @Test
+    void testEachPurchaseGetsItsOwnResult() throws Exception {
+        // Given
+        purchaseBatcher = startBatcher(10);
+        when(userUtils.getCurrentUserId()).thenReturn(1L);
+        doThrow(new InsufficientFundsException("Insufficient funds")).when(userService).purchaseInCurrentTransaction(1L, 2L);
+
+        // When
+        CompletableFuture<Void> first = purchaseBatcher.submit(1L);
+        CompletableFuture<Void> rejected = purchaseBatcher.submit(2L);
+        CompletableFuture<Void> third = purchaseBatcher.submit(3L);
+
+        // Then
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        assertNull(third.get(5, TimeUnit.SECONDS));
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InsufficientFundsException.class, exception.getCause());
+        verify(transactionManager, atLeastOnce()).commit(any());
+    }
+
+    @Test
+    void testFullQueueIsRejected() throws Exception {
+        // Given
+        purchaseBatcher = startBatcher(1);
+        when(userUtils.getCurrentUserId()).thenReturn(1L);
+        CountDownLatch writerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            writerBusy.countDown();
+            release.await();
+            return null;
+        }).when(userService).purchaseInCurrentTransaction(1L, 1L);
+
+        // When the writer is stuck on the first purchase and the second one fills the queue
+        CompletableFuture<Void> inFlight = purchaseBatcher.submit(1L);
+        writerBusy.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Void> queued = purchaseBatcher.submit(2L);
+
+        // Then
+        assertThrows(ServiceBusyException.class, () -> purchaseBatcher.submit(3L));
+        assertFalse(queued.isDone());
+        release.countDown();
+        assertNull(inFlight.get(5, TimeUnit.SECONDS));
+        assertNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testDisabledBatcherRejectsSubmissions() {
+        // Given
+        purchaseBatcher = new PurchaseBatcher(userService, userUtils, transactionManager, false, 10, 10);
+        purchaseBatcher.start();
+
+        // When & Then
+        assertFalse(purchaseBatcher.isEnabled());
+        assertThrows(ServiceBusyException.class, () -> purchaseBatcher.submit(1L));
+    }
+
+    private PurchaseBatcher startBatcher(int queueCapacity) {
+        PurchaseBatcher batcher = new PurchaseBatcher(userService, userUtils, transactionManager, true, queueCapacity, 10);
+        batcher.start();
+        return batcher;
+    }
+}
@@ -0,0 +1,121 @@
+package cars.unit;
+
+import com.example.cars.services.CarCache;
+import com.example.cars.services.CarModelIndex;
+import com.example.cars.services.SalesCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SalesCounterTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private CarCache carCache;
+
+    @Mock
+    private CarModelIndex carModelIndex;
+
+    @InjectMocks
+    private SalesCounter salesCounter;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void testFlushWritesDeltasAndResetsThem() {
+        // Given
+        salesCounter.increment(1L);
+        salesCounter.increment(1L);
+        salesCounter.increment(2L);
+        runTransactionCallbacks();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{1, 1});
+
+        // When
+        salesCounter.flush();
+
+        // Then
+        assertEquals(0, salesCounter.pendingDelta(1L));
+        assertEquals(0, salesCounter.pendingDelta(2L));
+        verify(carCache).invalidate(1L);
+        verify(carCache).invalidate(2L);
+        verify(carModelIndex).addFlushedSales(1L, 2L);
+        verify(carModelIndex).addFlushedSales(2L, 1L);
+    }
+
+    @Test
+    void testFlushKeepsDeltaOfRowsThatWereNotUpdated() {
+        // Given
+        salesCounter.increment(3L);
+        runTransactionCallbacks();
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0});
+
+        // When
+        salesCounter.flush();
+
+        // Then
+        assertEquals(1, salesCounter.pendingDelta(3L));
+        verify(carCache, never()).invalidate(3L);
+        verify(carModelIndex, never()).addFlushedSales(anyLong(), anyLong());
+    }
+
+    @Test
+    void testFlushWithoutPendingSalesSkipsTheDatabase() {
+        // When
+        salesCounter.flush();
+
+        // Then
+        verifyNoInteractions(jdbcTemplate, transactionTemplate);
+    }
+
+    @Test
+    void testRolledBackPurchaseIsTakenBackOut() {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        salesCounter.increment(4L);
+        assertEquals(1, salesCounter.pendingDelta(4L));
+
+        // When
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        synchronizations.forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        // Then
+        assertEquals(0, salesCounter.pendingDelta(4L));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void runTransactionCallbacks() {
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<int[]>) invocation.getArgument(0)).doInTransaction(null));
+    }
+}
@@ -0,0 +1,103 @@
+package cars.unit;
+
+import com.example.cars.model.CarDTO;
+import com.example.cars.model.CarSortField;
+import com.example.cars.model.EngineDTO;
+import com.example.cars.persistence.CarRepository;
+import com.example.cars.services.CarCache;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.services.SalesLeaderboard;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Sort;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SalesLeaderboardTest {
+
+    @Mock
+    private CarRepository carRepository;
+
+    private final SalesCounter salesCounter = new SalesCounter(null, null, new CarCache(100, Duration.ofMinutes(5)), null);
+
+    private SalesLeaderboard salesLeaderboard;
+
+    @BeforeEach
+    void setUp() {
+        salesLeaderboard = new SalesLeaderboard(carRepository, salesCounter, 2);
+        when(carRepository.findCarsAfter(isNull(), eq(CarSortField.SALES_COUNT), eq(Sort.Direction.DESC), isNull(), eq(2)))
+                .thenReturn(List.of(car(1L, 10), car(2L, 5)));
+        salesLeaderboard.load();
+    }
+
+    @Test
+    void testTopIsOrderedBySalesCount() {
+        assertEquals(List.of(1L, 2L), ids(salesLeaderboard.top(10)));
+        assertEquals(List.of(1L), ids(salesLeaderboard.top(1)));
+    }
+
+    @Test
+    void testSaleMovesMemberWithoutDatabaseAccess() {
+        for (int i = 0; i < 6; i++) {
+            salesLeaderboard.recordSale(2L);
+        }
+
+        List<CarDTO> top = salesLeaderboard.top(2);
+        assertEquals(List.of(2L, 1L), ids(top));
+        assertEquals(11L, top.getFirst().getSalesCount());
+        verify(carRepository, never()).findCarsByIds(anyList());
+    }
+
+    @Test
+    void testCandidateIsPromotedOnRefresh() {
+        salesLeaderboard.recordSale(3L);
+        when(carRepository.findCarsByIds(List.of(3L))).thenReturn(List.of(car(3L, 7)));
+
+        salesLeaderboard.refresh();
+
+        assertEquals(List.of(1L, 3L), ids(salesLeaderboard.top(2)));
+    }
+
+    @Test
+    void testCandidateBelowBoardIsNotPromoted() {
+        salesLeaderboard.recordSale(3L);
+        when(carRepository.findCarsByIds(List.of(3L))).thenReturn(List.of(car(3L, 1)));
+
+        salesLeaderboard.refresh();
+
+        assertEquals(List.of(1L, 2L), ids(salesLeaderboard.top(2)));
+    }
+
+    @Test
+    void testRemovedMemberIsRefilledOnRefresh() {
+        salesLeaderboard.remove(1L);
+        assertEquals(List.of(2L), ids(salesLeaderboard.top(2)));
+
+        salesLeaderboard.refresh();
+
+        verify(carRepository, times(2)).findCarsAfter(any(), any(), any(), any(), eq(2));
+    }
+
+    private static CarDTO car(Long id, long salesCount) {
+        return new CarDTO(id, "Model " + id, 2024, true, 1000L, new EngineDTO(1L, 200, 2.0, 0L), null, salesCount, 0L);
+    }
+
+    private static List<Long> ids(List<CarDTO> cars) {
+        return cars.stream().map(CarDTO::getId).toList();
+    }
+}
@@ -0,0 +1,248 @@
+package cars.unit;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.example.cars.images.service.StorageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class StorageServiceTest {
+    private static final String BUCKET = "bucket";
+    private static final String PREFIX = "images/123e4567-e89b-12d3-a456-426614174000/";
+    private static final String KEY = PREFIX + "original.png";
+
+    @Mock
+    private AmazonS3 s3Client;
+
+    private StorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new StorageService();
+        ReflectionTestUtils.setField(storageService, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(storageService, "multipartThreshold", DataSize.ofMegabytes(16));
+        ReflectionTestUtils.setField(storageService, "partSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(storageService, "parallelism", 2);
+        ReflectionTestUtils.setField(storageService, "variantThreads", 2);
+        ReflectionTestUtils.setField(storageService, "maxImagePixels", 50_000_000L);
+        ReflectionTestUtils.setField(storageService, "s3Client", s3Client);
+        storageService.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storageService.stop();
+    }
+
+    @Test
+    void testVariantsAreResizedInParallel() throws IOException {
+        ByteArrayResource source = png(3200, 2400);
+        Map<String, BufferedImage> variants = new ConcurrentHashMap<>();
+        Set<String> variantThreads = ConcurrentHashMap.newKeySet();
+        when(s3Client.putObject(any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            if (!request.getKey().equals(KEY)) {
+                variants.put(request.getKey(), ImageIO.read(request.getInputStream()));
+                variantThreads.add(Thread.currentThread().getName());
+            }
+            return null;
+        });
+
+        storageService.uploadWithVariants(source, source.contentLength(), "image/png", KEY);
+
+        assertEquals(Set.of(PREFIX + "thumbnail", PREFIX + "card", PREFIX + "full"), variants.keySet());
+        assertDimensions(variants.get(PREFIX + "thumbnail"), 160, 120);
+        assertDimensions(variants.get(PREFIX + "card"), 480, 360);
+        // Decoded subsampled to the largest variant, which still gets its full size
+        assertDimensions(variants.get(PREFIX + "full"), 1600, 1200);
+        assertTrue(variantThreads.stream().allMatch(name -> name.startsWith("image-variant-")), variantThreads::toString);
+        verify(s3Client, never()).copyObject(any(String.class), any(String.class), any(String.class), any(String.class));
+    }
+
+    @Test
+    void testUndecodableImageGetsCopiesOfOriginal() {
+        ByteArrayResource source = new ByteArrayResource("not an image".getBytes());
+
+        storageService.uploadWithVariants(source, source.contentLength(), "image/webp", KEY);
+
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(put.capture());
+        assertEquals(KEY, put.getValue().getKey());
+        for (String variant : List.of("thumbnail", "card", "full")) {
+            verify(s3Client).copyObject(BUCKET, KEY, BUCKET, PREFIX + variant);
+        }
+    }
+
+    @Test
+    void testFailedUploadRemovesStoredObjects() throws IOException {
+        ByteArrayResource source = png(400, 300);
+        RuntimeException failure = new RuntimeException("S3 unavailable");
+        when(s3Client.putObject(any(PutObjectRequest.class))).thenAnswer(invocation -> {
+            PutObjectRequest request = invocation.getArgument(0);
+            if (request.getKey().equals(KEY)) {
+                throw failure;
+            }
+            return null;
+        });
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> storageService.uploadWithVariants(source, source.contentLength(), "image/png", KEY));
+
+        assertSame(failure, thrown);
+        ArgumentCaptor<DeleteObjectsRequest> delete = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client).deleteObjects(delete.capture());
+        assertEquals(Set.of(KEY, PREFIX + "thumbnail", PREFIX + "card", PREFIX + "full"),
+                Set.copyOf(delete.getValue().getKeys().stream().map(DeleteObjectsRequest.KeyVersion::getKey).toList()));
+    }
+
+    @Test
+    void testImageOverPixelLimitIsRejected() throws IOException {
+        ReflectionTestUtils.setField(storageService, "maxImagePixels", 10_000L);
+        ByteArrayResource source = png(200, 100);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> storageService.uploadWithVariants(source, source.contentLength(), "image/png", KEY));
+
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void testLargeUploadIsSplitIntoParts() {
+        useParts(DataSize.ofBytes(10), DataSize.ofBytes(4));
+        ByteArrayResource source = new ByteArrayResource("0123456789".getBytes(StandardCharsets.UTF_8));
+        Map<Integer, UploadPartRequest> parts = new ConcurrentHashMap<>();
+        Map<Integer, String> contents = new ConcurrentHashMap<>();
+        when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated());
+        when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            parts.put(request.getPartNumber(), request);
+            byte[] content = request.getInputStream().readNBytes((int) request.getPartSize());
+            contents.put(request.getPartNumber(), new String(content, StandardCharsets.UTF_8));
+            return uploaded(request.getPartNumber());
+        });
+
+        storageService.upload(source, source.contentLength(), "image/png", KEY);
+
+        assertEquals(Map.of(1, "0123", 2, "4567", 3, "89"), contents);
+        assertEquals(4, parts.get(1).getPartSize());
+        assertEquals(2, parts.get(3).getPartSize());
+        assertFalse(parts.get(1).isLastPart());
+        assertFalse(parts.get(2).isLastPart());
+        assertTrue(parts.get(3).isLastPart());
+        assertTrue(parts.values().stream().allMatch(part -> "upload-1".equals(part.getUploadId())));
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(complete.capture());
+        assertArrayEquals(new int[]{1, 2, 3},
+                complete.getValue().getPartETags().stream().mapToInt(PartETag::getPartNumber).toArray());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class));
+    }
+
+    @Test
+    void testFailedPartAbortsUpload() {
+        useParts(DataSize.ofBytes(10), DataSize.ofBytes(4));
+        ByteArrayResource source = new ByteArrayResource("0123456789".getBytes(StandardCharsets.UTF_8));
+        AmazonS3Exception failure = new AmazonS3Exception("Part rejected");
+        when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiated());
+        when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            if (request.getPartNumber() == 2) {
+                throw failure;
+            }
+            return uploaded(request.getPartNumber());
+        });
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+                () -> storageService.upload(source, source.contentLength(), "image/png", KEY));
+
+        // Unwrapped from the CompletionException of the part upload
+        assertSame(failure, thrown);
+        ArgumentCaptor<AbortMultipartUploadRequest> abort = ArgumentCaptor.forClass(AbortMultipartUploadRequest.class);
+        verify(s3Client).abortMultipartUpload(abort.capture());
+        assertEquals("upload-1", abort.getValue().getUploadId());
+        assertEquals(KEY, abort.getValue().getKey());
+        verify(s3Client, never()).completeMultipartUpload(any());
+    }
+
+    @Test
+    void testUploadBelowThresholdIsSingleRequest() {
+        useParts(DataSize.ofBytes(10), DataSize.ofBytes(4));
+        ByteArrayResource source = new ByteArrayResource("012345678".getBytes(StandardCharsets.UTF_8));
+
+        storageService.upload(source, source.contentLength(), "image/png", KEY);
+
+        ArgumentCaptor<PutObjectRequest> put = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client).putObject(put.capture());
+        assertEquals(9, put.getValue().getMetadata().getContentLength());
+        verify(s3Client, never()).initiateMultipartUpload(any());
+    }
+
+    private void useParts(DataSize multipartThreshold, DataSize partSize) {
+        ReflectionTestUtils.setField(storageService, "multipartThreshold", multipartThreshold);
+        ReflectionTestUtils.setField(storageService, "partSize", partSize);
+    }
+
+    private static InitiateMultipartUploadResult initiated() {
+        InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+        result.setUploadId("upload-1");
+        return result;
+    }
+
+    private static UploadPartResult uploaded(int partNumber) {
+        UploadPartResult result = new UploadPartResult();
+        result.setPartNumber(partNumber);
+        result.setETag("etag-" + partNumber);
+        return result;
+    }
+
+    private static ByteArrayResource png(int width, int height) throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", encoded);
+        return new ByteArrayResource(encoded.toByteArray());
+    }
+
+    private static void assertDimensions(BufferedImage image, int width, int height) {
+        assertEquals(width, image.getWidth());
+        assertEquals(height, image.getHeight());
+    }
+}
@@ -6,8 +6,12 @@ import com.example.cars.error.NotFoundException;
 import com.example.cars.persistence.Car;
 import com.example.cars.persistence.CarRepository;
 import com.example.cars.persistence.Engine;
+import com.example.cars.services.SalesCounter;
+import com.example.cars.services.SalesLeaderboard;
 import com.example.cars.user.persistence.AppUser;
 import com.example.cars.user.persistence.AppUserRepository;
+import com.example.cars.user.persistence.BalanceEntryReason;
+import com.example.cars.user.service.BalanceService;
 import com.example.cars.user.service.UserService;
 import com.example.cars.user.utils.UserUtils;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +20,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
 
 import java.util.HashSet;
 import java.util.Optional;
@@ -35,6 +40,15 @@ public class UsersServiceUnitTest {
     @Mock
     private AppUserRepository appUserRepository;
 
+    @Mock
+    private SalesCounter salesCounter;
+
+    @Mock
+    private SalesLeaderboard salesLeaderboard;
+
+    @Mock
+    private BalanceService balanceService;
+
     @InjectMocks
     private UserService userService;
 
@@ -72,30 +86,30 @@ public class UsersServiceUnitTest {
     @Test
     void testPurchaseCarWithEnoughMoney() {
         // Given
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
-        long initialUserBalance = testUser.getBalanceInCents();
-        long carPrice = testCar.getPriceInCents();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(appUserRepository.addUserCar(testUser.getId(), testCar.getId())).thenReturn(1);
+        when(balanceService.tryDebit(testUser.getId(), testCar.getPriceInCents(), BalanceEntryReason.PURCHASE, testCar.getId())).thenReturn(true);
 
         // When
         userService.purchaseCar(testCar.getId());
 
         // Then
-        assertTrue(testUser.getCars().contains(testCar), "Purchased car should be added to user's cars");
-        assertEquals(initialUserBalance - carPrice, testUser.getBalanceInCents(),
-                "Car price should be reduced from the user's balance");
-        assertEquals(1L, testCar.getSalesCount(), "Sales count should be incremented");
-        verify(appUserRepository).save(testUser);
-        verify(carRepository).save(testCar);
+        verify(appUserRepository).addUserCar(testUser.getId(), testCar.getId());
+        verify(balanceService).tryDebit(testUser.getId(), testCar.getPriceInCents(), BalanceEntryReason.PURCHASE, testCar.getId());
+        verify(appUserRepository).adjustOwnedCarsCount(testUser.getId(), 1);
+        verify(salesCounter).increment(testCar.getId());
+        verify(salesLeaderboard).recordSale(testCar.getId());
     }
 
     @Test
     void testPurchaseCarWithoutEnoughMoney() {
         // Given
         testUser.setBalanceInCents(2000L);
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
-        long initialBalance = testUser.getBalanceInCents();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(balanceService.tryDebit(testUser.getId(), testCar.getPriceInCents(), BalanceEntryReason.PURCHASE, testCar.getId())).thenReturn(false);
+        when(balanceService.getBalance(testUser.getId())).thenReturn(testUser.getBalanceInCents());
 
         // When & Part of Then
         InsufficientFundsException exception = assertThrows(
@@ -112,35 +126,38 @@ public class UsersServiceUnitTest {
         assertTrue(exception.getMessage().contains(String.valueOf(testUser.getBalanceInCents())),
                 "Exception message should contain user's balance");
 
-        // Verify user info
-        assertEquals(0, testUser.getCars().size(), "User's cars should be empty");
-        assertEquals(initialBalance, testUser.getBalanceInCents(), "User's balance should not be changed");
-        assertEquals(0L, testCar.getSalesCount(), "Car sales count should not be changed");
-
-        verify(appUserRepository, never()).save(any(AppUser.class));
-        verify(carRepository, never()).save(any(Car.class));
+        verify(appUserRepository, never()).addUserCar(anyLong(), anyLong());
+        verify(salesCounter, never()).increment(anyLong());
     }
 
     @Test
     void testPurchaseAlreadyOwnedCar() {
         // Given
-        testUser.getCars().add(testCar);
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
-        long initialBalance = testUser.getBalanceInCents();
-        long initialSalesCount = testCar.getSalesCount();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(appUserRepository.existsUserCar(testUser.getId(), testCar.getId())).thenReturn(true);
 
         // When & part of Then
         assertThrows(CarAlreadyPurchasedException.class, () -> userService.purchaseCar(testCar.getId()),
                 "Should throw CarAlreadyPurchasedException when user already owns the car");
 
-        // Then
-        assertEquals(1, testUser.getCars().size(), "User's car collection size should remain the same");
-        assertEquals(initialBalance, testUser.getBalanceInCents(), "User's balance should remain unchanged");
-        assertEquals(initialSalesCount, testCar.getSalesCount(), "Car's sales count should remain unchanged");
+        // Then the balance and the sales count are never touched
+        verify(balanceService, never()).tryDebit(anyLong(), anyLong(), any(), any());
+        verify(salesCounter, never()).increment(anyLong());
+    }
 
-        verify(appUserRepository, never()).save(any(AppUser.class));
-        verify(carRepository, never()).save(any(Car.class));
+    @Test
+    void testPurchaseCarConcurrentlyOwned() {
+        // Given
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(balanceService.tryDebit(testUser.getId(), testCar.getPriceInCents(), BalanceEntryReason.PURCHASE, testCar.getId())).thenReturn(true);
+        when(appUserRepository.addUserCar(testUser.getId(), testCar.getId()))
+                .thenThrow(new DataIntegrityViolationException("duplicate key"));
+
+        // When & Then
+        assertThrows(CarAlreadyPurchasedException.class, () -> userService.purchaseCar(testUser.getId(), testCar.getId()),
+                "A lost race on the ownership row should surface as CarAlreadyPurchasedException");
+        verify(salesCounter, never()).increment(anyLong());
     }
 
     @Test
@@ -148,9 +165,8 @@ public class UsersServiceUnitTest {
         // Given
         long nonExistentCarId = 123123123L;
 
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(nonExistentCarId)).thenReturn(Optional.empty());
-        long initialUserBalance = testUser.getBalanceInCents();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(nonExistentCarId)).thenReturn(Optional.empty());
 
         // When & part of Then
         NotFoundException exception = assertThrows(
@@ -163,40 +179,35 @@ public class UsersServiceUnitTest {
         String expectedMessage = "Car with id " + nonExistentCarId + " not found";
         assertEquals(expectedMessage, exception.getMessage(),
                 "Exception message should contain: " + expectedMessage);
-        assertEquals(0, testUser.getCars().size(), "User's cars should be empty");
-        assertEquals(initialUserBalance, testUser.getBalanceInCents(), "User's balance should not be changed");
 
-        verify(appUserRepository, never()).save(any(AppUser.class));
-        verify(carRepository, never()).save(any(Car.class));
+        verify(appUserRepository, never()).addUserCar(anyLong(), anyLong());
+        verify(balanceService, never()).tryDebit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void testSellCarSuccessfully() {
         // Given
-        testUser.getCars().add(testCar);
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(appUserRepository.deleteUserCar(testUser.getId(), testCar.getId())).thenReturn(1);
 
-        long initialBalance = testUser.getBalanceInCents();
         long expectedCarSalePrice = Math.round(testCar.getPriceInCents() * DEPRECIATION_FACTOR);
 
         // When
         userService.sellCar(testCar.getId());
 
         // Then
-        assertFalse(testUser.getCars().contains(testCar), "Car should be removed from user's cars");
-        assertEquals(initialBalance + expectedCarSalePrice, testUser.getBalanceInCents(),
-                "Balance should be increased by depreciated car price");
-
-        verify(appUserRepository).save(testUser);
+        verify(appUserRepository).deleteUserCar(testUser.getId(), testCar.getId());
+        verify(balanceService).credit(testUser.getId(), expectedCarSalePrice, BalanceEntryReason.SALE, testCar.getId());
+        verify(appUserRepository).adjustOwnedCarsCount(testUser.getId(), -1);
     }
 
     @Test
     void testSellNotOwnedCar() {
         // Given
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(testCar.getId())).thenReturn(Optional.of(testCar));
-        long initialBalance = testUser.getBalanceInCents();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(testCar.getId())).thenReturn(Optional.of(testCar.getPriceInCents()));
+        when(appUserRepository.deleteUserCar(testUser.getId(), testCar.getId())).thenReturn(0);
 
         // When & part of Then
         NotFoundException exception = assertThrows(
@@ -209,19 +220,16 @@ public class UsersServiceUnitTest {
         String expectedMessage = "User has no car with id " + testCar.getId();
         assertEquals(expectedMessage, exception.getMessage(),
                 "Exception message should be equal to this message: " + expectedMessage);
-        assertEquals(0, testUser.getCars().size(), "User's cars should remain empty");
-        assertEquals(initialBalance, testUser.getBalanceInCents(), "User's balance should not be changed");
 
-        verify(appUserRepository, never()).save(any(AppUser.class));
+        verify(balanceService, never()).credit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void testSellNonExistentCar() {
         // Given
         long nonExistentCarId = 123123123L;
-        when(userUtils.getCurrentUser()).thenReturn(testUser);
-        when(carRepository.findById(nonExistentCarId)).thenReturn(Optional.empty());
-        long initialUserBalance = testUser.getBalanceInCents();
+        when(userUtils.getCurrentUserId()).thenReturn(testUser.getId());
+        when(carRepository.findPriceInCents(nonExistentCarId)).thenReturn(Optional.empty());
 
         // When & part of Then
         NotFoundException exception = assertThrows(
@@ -234,51 +242,48 @@ public class UsersServiceUnitTest {
         String expectedMessage = "Car with id " + nonExistentCarId + " not found";
         assertEquals(expectedMessage, exception.getMessage(),
                 "Exception message should exactly match the expected format");
-        assertEquals(0, testUser.getCars().size(), "User's car collection should remain empty");
-        assertEquals(initialUserBalance, testUser.getBalanceInCents(), "User's balance should remain unchanged");
 
-        verify(appUserRepository, never()).save(any(AppUser.class));
+        verify(appUserRepository, never()).deleteUserCar(anyLong(), anyLong());
+        verify(balanceService, never()).credit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void testUpdateBalanceWithPositiveAmount() {
         // Given
-        when(appUserRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        long initialUserBalance = testUser.getBalanceInCents();
+        when(appUserRepository.existsById(testUser.getId())).thenReturn(true);
         long amountToAdd = 7000L;
 
         // When
         userService.updateBalance(testUser.getId(), amountToAdd);
 
-        // Then
-        assertEquals(initialUserBalance + amountToAdd, testUser.getBalanceInCents(),
-                "Balance should be increased by the amount");
-
-        verify(appUserRepository).save(testUser);
+        // Then a top-up is only appended to the ledger
+        verify(balanceService).credit(testUser.getId(), amountToAdd, BalanceEntryReason.TOP_UP, null);
+        verify(balanceService, never()).tryDebit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void testUpdateBalanceWithNegativeAmountWithSufficientFunds() {
         // Given
-        when(appUserRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
-        long initialBalance = testUser.getBalanceInCents();
+        when(appUserRepository.existsById(testUser.getId())).thenReturn(true);
+        when(balanceService.tryDebit(testUser.getId(), 3000L, BalanceEntryReason.WITHDRAWAL, null)).thenReturn(true);
         long amountToSubtract = -3000L;
 
         // When
         userService.updateBalance(testUser.getId(), amountToSubtract);
 
         // Then
-        assertEquals(initialBalance + amountToSubtract, testUser.getBalanceInCents(),
-                "Balance should be decreased by the amount");
-        verify(appUserRepository).save(testUser);
+        verify(balanceService).tryDebit(testUser.getId(), 3000L, BalanceEntryReason.WITHDRAWAL, null);
+        verify(balanceService, never()).credit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void testUpdateBalanceWithNegativeAmountWithInsufficientFunds() {
         // Given
-        when(appUserRepository.findById(testUser.getId())).thenReturn(Optional.of(testUser));
         long initialBalance = testUser.getBalanceInCents();
         long amountToSubtract = -100000L;
+        when(appUserRepository.existsById(testUser.getId())).thenReturn(true);
+        when(balanceService.tryDebit(testUser.getId(), 100000L, BalanceEntryReason.WITHDRAWAL, null)).thenReturn(false);
+        when(balanceService.getBalance(testUser.getId())).thenReturn(initialBalance);
 
         // When & part of Then
         InsufficientFundsException exception = assertThrows(
@@ -296,16 +301,15 @@ public class UsersServiceUnitTest {
                 "Exception message should contain the requested amount: " + amountToSubtract);
         assertTrue(exception.getMessage().contains(String.valueOf(initialBalance)),
                 "Exception message should contain the user's balance: " + initialBalance);
-        assertEquals(initialBalance, testUser.getBalanceInCents(), "User's balance should not be changed");
 
-        verify(appUserRepository, never()).save(any(AppUser.class));
+        verify(balanceService, never()).credit(anyLong(), anyLong(), any(), any());
     }
 
     @Test
     void updateBalanceWithNonExistentUser() {
         // Given
         long nonExistentUserId = 123123L;
-        when(appUserRepository.findById(nonExistentUserId)).thenReturn(Optional.empty());
+        when(appUserRepository.existsById(nonExistentUserId)).thenReturn(false);
         long amountToAdd = 5000L;
 
         // When & Then
@@ -319,6 +323,6 @@ public class UsersServiceUnitTest {
         String expectedMessage = "User with id '" + nonExistentUserId + "' not found";
         assertEquals(expectedMessage, exception.getMessage(),
                 "Exception message should contain: " + expectedMessage);
-        verify(appUserRepository, never()).save(any(AppUser.class));
+        verifyNoInteractions(balanceService);
     }
 }